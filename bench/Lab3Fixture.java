@@ -0,0 +1,213 @@
+/*
+  This class generates the data for one combination of the benchmark parameters and builds the
+  codes from it, then hands out each stage of Lab3 as an operation to be timed. The benchmarks
+  themselves are in benchmarks.Lab3Benchmark, since JMH does not accept a benchmark in the
+  default package and a class in a package cannot name the classes of Lab3; it loads this class
+  by name and sees it only as a Function from a stage name to the operation.
+
+  @author Skyler Carlson
+  @since 2019-04-19
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+public class Lab3Fixture implements Function<String, LongSupplier> {
+
+    // The total frequency of a generated table
+    private static final double TABLE_SCALE = 1 << 20;
+
+    private final char[] symbols;
+    private final int[] frequencies;
+    private final File tableFile;
+    private final String clearText;
+    private final HuffmanCodebook codebook;
+    private final FreqTreeNode huffmanTree;
+    private final HuffmanDecodeTable decodeTable;
+    private final String encodedText;
+    private final byte[] packed;
+    private final long packedBits;
+    private final PackedHuffmanFile interleaved;
+    private final InterleavedHuffmanCoder interleavedDecoder;
+
+    /**
+     * Constructor for the generated data. Symbol i has a frequency proportional to
+     * 1 / (i + 1)^skew, so a skew of 0 gives a uniform table and a skew of 1 follows Zipf's
+     * law. The clear text is drawn from the same distribution.
+     *
+     * @param alphabet      The number of symbols.
+     * @param length        The number of symbols of clear text.
+     * @param skew          The exponent of the frequency distribution.
+     * @throws IOException  If the frequency table or packed file cannot be written.
+     */
+    public Lab3Fixture(int alphabet, int length, double skew) throws IOException {
+        this.symbols = new char[alphabet];
+        this.frequencies = new int[alphabet];
+        double total = 0;
+        for (int i = 0; i < alphabet; i++) {
+            total += 1 / Math.pow(i + 1, skew);
+        }
+        for (int i = 0; i < alphabet; i++) {
+            symbols[i] = (char) ('A' + i);
+            frequencies[i] = (int) Math.max(1,
+                Math.round(TABLE_SCALE / Math.pow(i + 1, skew) / total));
+        }
+
+        // Write the letters of the table in the frequency table file format, which only
+        // holds the letters A to Z
+        this.tableFile = File.createTempFile("FreqTable", ".txt");
+        tableFile.deleteOnExit();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(tableFile),
+            HuffmanStream.CHARSET);
+        try {
+            for (int i = 0; i < Math.min(alphabet, 26); i++) {
+                writer.write(symbols[i] + " - " + frequencies[i] + "\r\n");
+            }
+        } finally {
+            writer.close();
+        }
+
+        // Draw the clear text from the cumulative frequencies
+        long[] cumulative = new long[alphabet];
+        long sum = 0;
+        for (int i = 0; i < alphabet; i++) {
+            sum += frequencies[i];
+            cumulative[i] = sum;
+        }
+        Random random = new Random(42);
+        char[] text = new char[length];
+        for (int i = 0; i < length; i++) {
+            long draw = (long) (random.nextDouble() * sum);
+            int index = Arrays.binarySearch(cumulative, draw + 1);
+            text[i] = symbols[index < 0 ? -index - 1 : index];
+        }
+        this.clearText = new String(text);
+
+        // Build the codes the same way Lab3 does
+        PriorityQueue<FreqTreeNode> nodeQueue = new PriorityQueue<FreqTreeNode>();
+        FreqTreeNode[] freqTable = newFreqTable();
+        nodeQueue.addAll(Arrays.asList(freqTable));
+        this.huffmanTree = Lab3.buildHuffmanTree(nodeQueue);
+        Lab3.addHuffmanCodes(huffmanTree, "");
+        this.codebook = new HuffmanCodebook(freqTable);
+        this.decodeTable = new HuffmanDecodeTable(huffmanTree);
+
+        this.encodedText = Lab3.encodeHuffman(codebook, clearText).toString();
+        BitWriter packedWriter = new BitWriter();
+        Lab3.encodeHuffman(codebook, clearText, packedWriter);
+        this.packed = packedWriter.toByteArray();
+        this.packedBits = packedWriter.getBitLength();
+
+        // Write the clear text as interleaved streams in a packed file
+        long[][] chunkOffsets = {new long[InterleavedHuffmanCoder.STREAMS]};
+        long[][] symbolOffsets = {new long[InterleavedHuffmanCoder.STREAMS + 1]};
+        BitWriter[] streams = {InterleavedHuffmanCoder.encode(codebook, clearText,
+            chunkOffsets[0], symbolOffsets[0])};
+        File packedFile = File.createTempFile("Interleaved", ".bin");
+        packedFile.deleteOnExit();
+        PackedHuffmanFile.writeStreams(packedFile.getPath(), streams, chunkOffsets,
+            symbolOffsets, null, null);
+        this.interleaved = PackedHuffmanFile.read(packedFile.getPath());
+        this.interleavedDecoder = new InterleavedHuffmanCoder(decodeTable);
+    }
+
+    /**
+     * This method gives one operation of a stage: importFreqTable, buildHuffmanTree,
+     * buildHuffmanTreeLinear, buildCompactTree, encodeText, encodePacked, decodeText,
+     * decodeTextTree, decodePacked or decodeInterleaved. Each returns a value derived from its
+     * result.
+     *
+     * @param stage         The name of the stage.
+     * @return              The operation.
+     * @throws IllegalArgumentException If there is no such stage.
+     */
+    @Override
+    public LongSupplier apply(String stage) {
+        if (stage.equals("importFreqTable")) {
+            return () -> Lab3.importFreqTable(tableFile.getPath()).length;
+        } else if (stage.equals("buildHuffmanTree")) {
+            return () -> {
+                PriorityQueue<FreqTreeNode> nodeQueue = new PriorityQueue<FreqTreeNode>();
+                nodeQueue.addAll(Arrays.asList(newFreqTable()));
+                return Lab3.buildHuffmanTree(nodeQueue).getFrequency();
+            };
+        } else if (stage.equals("buildHuffmanTreeLinear")) {
+            return () -> Lab3.buildHuffmanTreeLinear(newFreqTable()).getFrequency();
+        } else if (stage.equals("buildCompactTree")) {
+            return () -> {
+                CompactHuffmanTree tree = CompactHuffmanTree.build(newFreqTable());
+                return tree.getFrequency(tree.getRoot());
+            };
+        } else if (stage.equals("encodeText")) {
+            return () -> Lab3.encodeHuffman(codebook, clearText).length();
+        } else if (stage.equals("encodePacked")) {
+            return () -> {
+                BitWriter writer = new BitWriter();
+                Lab3.encodeHuffman(codebook, clearText, writer);
+                return writer.getBitLength();
+            };
+        } else if (stage.equals("decodeText")) {
+            return () -> Lab3.decodeHuffman(decodeTable, encodedText).length();
+        } else if (stage.equals("decodeTextTree")) {
+            return () -> decodeTreeWalk(huffmanTree, encodedText).length();
+        } else if (stage.equals("decodePacked")) {
+            return () -> Lab3.decodeHuffman(decodeTable,
+                new BitReader(packed, packedBits)).length();
+        } else if (stage.equals("decodeInterleaved")) {
+            return () -> interleavedDecoder.decode(interleaved, 0).length();
+        }
+        throw new IllegalArgumentException("Unknown stage " + stage + ".");
+    }
+
+    /**
+     * This method decodes a string of encoded data the way Lab3 did before the decode table,
+     * by walking the tree recursively from the root for each symbol, so that decodeText can be
+     * compared with it. Unlike that decoder, it keeps an index into the encoded data instead of
+     * cutting each code off the front, which would make it quadratic in the length.
+     *
+     * @param root          The root node of the Huffman tree.
+     * @param coded         The encoded string of data.
+     * @return              The decoded text.
+     */
+    private static StringBuilder decodeTreeWalk(FreqTreeNode root, String coded) {
+        StringBuilder decoded = new StringBuilder();
+        int[] position = {0};
+        while (position[0] < coded.length()) {
+            decoded.append(traverseHuffmanToDecode(root, coded, position));
+        }
+        return decoded;
+    }
+
+    /**
+     * This method follows the encoded data down the tree to a leaf.
+     *
+     * @param node          The node at which the traversal is.
+     * @param coded         The encoded string of data.
+     * @param position      The index of the next bit, which is updated.
+     * @return              The character of the leaf reached.
+     */
+    private static char traverseHuffmanToDecode(FreqTreeNode node, String coded,
+        int[] position) {
+        if (node.getLeft() == null && node.getRight() == null) {
+            return node.getCharacter();
+        }
+        return traverseHuffmanToDecode(coded.charAt(position[0]++) == '0'
+            ? node.getLeft() : node.getRight(), coded, position);
+    }
+
+    /**
+     * This method creates new frequency table nodes, since building a tree changes the nodes
+     * it is given.
+     *
+     * @return              The frequency table.
+     */
+    private FreqTreeNode[] newFreqTable() {
+        FreqTreeNode[] freqTable = new FreqTreeNode[symbols.length];
+        for (int i = 0; i < symbols.length; i++) {
+            freqTable[i] = new FreqTreeNode(symbols[i], frequencies[i]);
+        }
+        return freqTable;
+    }
+}
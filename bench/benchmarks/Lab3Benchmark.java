@@ -0,0 +1,164 @@
+/*
+  This program benchmarks each stage of the Huffman coding in Lab3 with JMH: importing the
+  frequency table, building the tree, encoding and decoding. Frequency tables and clear text are
+  generated for every combination of alphabet size, input length and frequency skew, so that a
+  change to any stage can be measured the same way on every run. The stages that code text also
+  report symbols and megabytes of clear text per second.
+
+  @author Skyler Carlson
+  @since 2019-04-19
+ */
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class Lab3Benchmark {
+
+    /**
+     * The number of symbols in the generated table. The table file only holds the letters A to
+     * Z, so importFreqTable imports at most 26 of them.
+     */
+    @Param({"26", "256"})
+    public int alphabet;
+
+    /**
+     * The number of symbols of generated clear text.
+     */
+    @Param({"1000", "1000000"})
+    public int length;
+
+    /**
+     * The exponent of the frequency distribution; 0 is uniform and 1 follows Zipf's law.
+     */
+    @Param({"0", "1"})
+    public double skew;
+
+    private LongSupplier importFreqTable;
+    private LongSupplier buildHuffmanTree;
+    private LongSupplier buildHuffmanTreeLinear;
+    private LongSupplier buildCompactTree;
+    private LongSupplier encodeText;
+    private LongSupplier encodePacked;
+    private LongSupplier decodeText;
+    private LongSupplier decodeTextTree;
+    private LongSupplier decodePacked;
+    private LongSupplier decodeInterleaved;
+
+    /**
+     * This method generates the data for the parameters and takes each stage from it. The
+     * fixture is in the default package, with Lab3, so it is loaded by name.
+     *
+     * @throws ReflectiveOperationException If the fixture cannot be created.
+     */
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws ReflectiveOperationException {
+        Function<String, LongSupplier> fixture = (Function<String, LongSupplier>)
+            Class.forName("Lab3Fixture").getConstructor(int.class, int.class, double.class)
+                .newInstance(alphabet, length, skew);
+        importFreqTable = fixture.apply("importFreqTable");
+        buildHuffmanTree = fixture.apply("buildHuffmanTree");
+        buildHuffmanTreeLinear = fixture.apply("buildHuffmanTreeLinear");
+        buildCompactTree = fixture.apply("buildCompactTree");
+        encodeText = fixture.apply("encodeText");
+        encodePacked = fixture.apply("encodePacked");
+        decodeText = fixture.apply("decodeText");
+        decodeTextTree = fixture.apply("decodeTextTree");
+        decodePacked = fixture.apply("decodePacked");
+        decodeInterleaved = fixture.apply("decodeInterleaved");
+    }
+
+    /**
+     * The clear text coded by a stage, which JMH reports per second beside the operations.
+     * A megabyte is 2^20 symbols, since the clear text files hold one byte per symbol.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+
+        public long symbols;
+        public double megabytes;
+
+        /**
+         * This method adds the clear text of one operation.
+         *
+         * @param length    The number of symbols coded.
+         */
+        void add(int length) {
+            symbols += length;
+            megabytes += length / (double) (1 << 20);
+        }
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            symbols = 0;
+            megabytes = 0;
+        }
+    }
+
+    @Benchmark
+    public long importFreqTable() {
+        return importFreqTable.getAsLong();
+    }
+
+    @Benchmark
+    public long buildHuffmanTree() {
+        return buildHuffmanTree.getAsLong();
+    }
+
+    @Benchmark
+    public long buildHuffmanTreeLinear() {
+        return buildHuffmanTreeLinear.getAsLong();
+    }
+
+    @Benchmark
+    public long buildCompactTree() {
+        return buildCompactTree.getAsLong();
+    }
+
+    @Benchmark
+    public long encodeText(Throughput throughput) {
+        throughput.add(length);
+        return encodeText.getAsLong();
+    }
+
+    @Benchmark
+    public long encodePacked(Throughput throughput) {
+        throughput.add(length);
+        return encodePacked.getAsLong();
+    }
+
+    @Benchmark
+    public long decodeText(Throughput throughput) {
+        throughput.add(length);
+        return decodeText.getAsLong();
+    }
+
+    @Benchmark
+    public long decodeTextTree(Throughput throughput) {
+        throughput.add(length);
+        return decodeTextTree.getAsLong();
+    }
+
+    @Benchmark
+    public long decodePacked(Throughput throughput) {
+        throughput.add(length);
+        return decodePacked.getAsLong();
+    }
+
+    @Benchmark
+    public long decodeInterleaved(Throughput throughput) {
+        throughput.add(length);
+        return decodeInterleaved.getAsLong();
+    }
+}
@@ -0,0 +1,108 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class defines the Flight Recorder events of a run: one event for each phase, spanning the
+ * time the phase took, and one event with the totals of the run. The events cost next to nothing
+ * unless a recording is started, for example with -XX:StartFlightRecording.
+ *
+ * This class is kept apart from the other sources, in the jfr source root, because it needs the
+ * jdk.jfr classes of Java 8u272 or later to compile. RunMetrics loads it by name, and only when
+ * the JVM has Flight Recorder, so that the program still builds and runs without it.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class HuffmanEvents implements RunEvents {
+
+    /**
+     * This class is the event for one phase of a run.
+     */
+    @Name("lab3.Phase")
+    @Label("Huffman Phase")
+    @Category("Huffman")
+    @Description("A phase of a Huffman coding run")
+    public static class PhaseEvent extends Event {
+
+        @Label("Phase")
+        String phase;
+    }
+
+    /**
+     * This class is the event with the totals of a run.
+     */
+    @Name("lab3.Run")
+    @Label("Huffman Run")
+    @Category("Huffman")
+    @Description("The totals of a Huffman coding run")
+    public static class RunEvent extends Event {
+
+        @Label("Bytes In")
+        @DataAmount
+        long bytesIn;
+
+        @Label("Bytes Out")
+        @DataAmount
+        long bytesOut;
+
+        @Label("Symbols Encoded")
+        long symbolsEncoded;
+
+        @Label("Symbols Decoded")
+        long symbolsDecoded;
+
+        @Label("Decode Errors")
+        long decodeErrors;
+
+        @Label("Table Entropy")
+        @Description("Shannon entropy of the frequency table, in bits per symbol")
+        double entropy;
+
+        @Label("Average Code Length")
+        @Description("Average code length over the frequency table, in bits per symbol")
+        double averageCodeLength;
+    }
+
+    /**
+     * This method starts the event for a phase.
+     * @param phase     The name of the phase.
+     * @return          The event, to be passed to endPhase().
+     */
+    @Override
+    public Object beginPhase(String phase) {
+        PhaseEvent event = new PhaseEvent();
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * This method ends the event for a phase and records it.
+     * @param event     The event returned by beginPhase().
+     */
+    @Override
+    public void endPhase(Object event) {
+        ((PhaseEvent) event).commit();
+    }
+
+    /**
+     * This method records the totals of a run.
+     * @param metrics   The metrics of the run.
+     */
+    @Override
+    public void commitRun(RunMetrics metrics) {
+        RunEvent event = new RunEvent();
+        event.bytesIn = metrics.get(RunMetrics.BYTES_IN);
+        event.bytesOut = metrics.get(RunMetrics.BYTES_OUT);
+        event.symbolsEncoded = metrics.get(RunMetrics.SYMBOLS_ENCODED);
+        event.symbolsDecoded = metrics.get(RunMetrics.SYMBOLS_DECODED);
+        event.decodeErrors = metrics.get(RunMetrics.DECODE_ERRORS);
+        event.entropy = metrics.getEntropy();
+        event.averageCodeLength = metrics.getAverageCodeLength();
+        event.commit();
+    }
+}
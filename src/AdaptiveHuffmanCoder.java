@@ -0,0 +1,322 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class codes symbols with adaptive Huffman codes (the FGK algorithm), so no frequency
+ * table is needed and the input is read only once. The tree starts with a single "not yet
+ * transmitted" (NYT) leaf. A symbol seen before is sent as the code of its leaf; a new symbol is
+ * sent as the code of the NYT leaf followed by the symbol's 16 raw bits, and the NYT leaf is
+ * split to make room for it. After each symbol, the weights on the path from its leaf to the
+ * root are incremented, and each node is first swapped with the highest-numbered node of equal
+ * weight so that the tree keeps the sibling property and stays a Huffman tree.
+ *
+ * The encoder and decoder each keep a coder and make the same updates, so they stay in step
+ * without any header. Memory use depends only on the number of distinct symbols. When the
+ * total weight reaches WEIGHT_LIMIT, both sides start again from an empty tree, so the weights
+ * never overflow however long the stream is.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class AdaptiveHuffmanCoder {
+
+    /**
+     * Number of raw bits sent after the NYT code for a new symbol.
+     */
+    static final int SYMBOL_BITS = 16;
+
+    /**
+     * Total weight at which the tree is started again.
+     */
+    static final int WEIGHT_LIMIT = 1 << 30;
+
+    // Returned by decodeBit() until a whole symbol has been read
+    static final int MORE_BITS = -1;
+
+    private FreqTreeNode root;
+    private FreqTreeNode notYetTransmitted;
+    private FreqTreeNode[] leaves;
+    private FreqTreeNode[] numbered;
+    private int nodeCount;
+    private byte[] path = new byte[64];
+
+    // Decoder state: the node reached so far, and the raw bits of a new symbol
+    private FreqTreeNode node;
+    private int rawBits = -1;
+    private int rawSymbol = 0;
+
+    /**
+     * Default constructor for a coder with an empty tree.
+     */
+    public AdaptiveHuffmanCoder() {
+        reset();
+    }
+
+    /**
+     * This method empties the tree, leaving only the NYT leaf.
+     */
+    public void reset() {
+        root = new FreqTreeNode();
+        notYetTransmitted = root;
+        leaves = new FreqTreeNode[128];
+        numbered = new FreqTreeNode[64];
+        numbered[0] = root;
+        nodeCount = 1;
+        node = root;
+        rawBits = -1;
+    }
+
+    /**
+     * This method encodes a symbol as '0'/'1' characters and updates the tree.
+     * @param symbol    The symbol to be encoded.
+     * @param out       The StringBuilder to which the code is appended.
+     */
+    public void encode(char symbol, StringBuilder out) {
+        int length = encodePath(symbol);
+        for (int i = 0; i < length; i++) {
+            out.append((char) ('0' + path[i]));
+        }
+        update(symbol);
+    }
+
+    /**
+     * This method encodes a symbol as packed bits and updates the tree.
+     * @param symbol    The symbol to be encoded.
+     * @param out       The BitWriter to which the code is appended.
+     */
+    public void encode(char symbol, BitWriter out) {
+        int length = encodePath(symbol);
+        for (int i = 0; i < length; i += 32) {
+            int count = Math.min(32, length - i);
+            int bits = 0;
+            for (int j = i; j < i + count; j++) {
+                bits = (bits << 1) | path[j];
+            }
+            out.writeBits(bits, count);
+        }
+        update(symbol);
+    }
+
+    /**
+     * This method encodes a symbol as '0'/'1' bytes and updates the tree. The buffer must have
+     * room for codeLength() bytes.
+     * @param symbol    The symbol to be encoded.
+     * @param out       The buffer to which the code is written.
+     */
+    public void encode(char symbol, ByteBuffer out) {
+        int length = encodePath(symbol);
+        for (int i = 0; i < length; i++) {
+            out.put((byte) ('0' + path[i]));
+        }
+        update(symbol);
+    }
+
+    /**
+     * This method finds how many bits the next encode() of a symbol will write.
+     * @param symbol    The symbol.
+     * @return          The length of the symbol's code, including any raw bits.
+     */
+    public int codeLength(char symbol) {
+        FreqTreeNode leaf = leaf(symbol);
+        int length = leaf == null ? SYMBOL_BITS : 0;
+        for (FreqTreeNode n = leaf == null ? notYetTransmitted : leaf; n != root;
+            n = n.getParent()) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * This method reads one bit of encoded input. When the bit completes a symbol, the tree is
+     * updated and the symbol is returned.
+     * @param bit       The bit, 0 or 1.
+     * @return          The decoded symbol, or MORE_BITS if the symbol is not yet complete.
+     */
+    public int decodeBit(int bit) {
+
+        // The first symbol of all is sent as raw bits alone
+        if (rawBits < 0 && node == notYetTransmitted) {
+            rawBits = 0;
+            rawSymbol = 0;
+        }
+
+        if (rawBits >= 0) {
+            rawSymbol = (rawSymbol << 1) | bit;
+            if (++rawBits < SYMBOL_BITS) {
+                return MORE_BITS;
+            }
+            rawBits = -1;
+            return finishSymbol((char) rawSymbol);
+        }
+
+        node = bit == 0 ? node.getLeft() : node.getRight();
+        if (node == notYetTransmitted) {
+            rawBits = 0;
+            rawSymbol = 0;
+            return MORE_BITS;
+        }
+        if (node.getLeft() == null) {
+            return finishSymbol(node.getCharacter());
+        }
+        return MORE_BITS;
+    }
+
+    /**
+     * This method tests whether the decoder is at the start of a symbol, as it must be at the
+     * end of a phrase.
+     * @return      True if no bits of a symbol have been read.
+     */
+    public boolean isBetweenSymbols() {
+        return rawBits < 0 && node == root;
+    }
+
+    /**
+     * This method drops the bits read of an unfinished symbol, so that decoding can go on
+     * from the root after invalid input.
+     */
+    public void abandonSymbol() {
+        node = root;
+        rawBits = -1;
+    }
+
+    /**
+     * This method updates the tree for a decoded symbol and returns to the root.
+     * @param symbol    The decoded symbol.
+     * @return          The symbol.
+     */
+    private int finishSymbol(char symbol) {
+        update(symbol);
+        node = root;
+        return symbol;
+    }
+
+    /**
+     * This method writes the bits of a symbol's code into the path array, from the root down.
+     * @param symbol    The symbol to be encoded.
+     * @return          The number of bits.
+     */
+    private int encodePath(char symbol) {
+        FreqTreeNode leaf = leaf(symbol);
+        int length = codeLength(symbol);
+        if (path.length < length) {
+            path = new byte[Math.max(length, path.length * 2)];
+        }
+
+        // A new symbol's raw bits come after the NYT code
+        int end = length;
+        if (leaf == null) {
+            for (int i = 0; i < SYMBOL_BITS; i++) {
+                path[length - SYMBOL_BITS + i] =
+                    (byte) ((symbol >>> (SYMBOL_BITS - 1 - i)) & 1);
+            }
+            end -= SYMBOL_BITS;
+            leaf = notYetTransmitted;
+        }
+
+        // Walk up from the leaf, filling the code in from its last bit
+        for (FreqTreeNode n = leaf; n != root; n = n.getParent()) {
+            path[--end] = (byte) (n.getParent().getRight() == n ? 1 : 0);
+        }
+        return length;
+    }
+
+    /**
+     * This method adds a symbol to the tree's weights, adding a leaf for it first if it is new.
+     * @param symbol    The symbol that was coded.
+     */
+    private void update(char symbol) {
+        FreqTreeNode leaf = leaf(symbol);
+
+        // Split the NYT leaf into a new NYT leaf and a leaf for the symbol
+        if (leaf == null) {
+            FreqTreeNode parent = notYetTransmitted;
+            leaf = new FreqTreeNode(symbol, 0);
+            notYetTransmitted = new FreqTreeNode();
+            parent.setLeft(notYetTransmitted);
+            parent.setRight(leaf);
+            leaf.setParent(parent);
+            notYetTransmitted.setParent(parent);
+            addNode(leaf);
+            addNode(notYetTransmitted);
+            if (symbol >= leaves.length) {
+                leaves = Arrays.copyOf(leaves, Math.max(symbol + 1, leaves.length * 2));
+            }
+            leaves[symbol] = leaf;
+        }
+
+        for (FreqTreeNode n = leaf; n != null; n = n.getParent()) {
+
+            // Move the node to the front of its block of equal weights
+            FreqTreeNode leader = n;
+            for (int i = n.getOrder() - 1;
+                i >= 0 && numbered[i].getFrequency() == n.getFrequency(); i--) {
+                leader = numbered[i];
+            }
+            if (leader != n && leader != n.getParent()) {
+                swap(n, leader);
+            }
+            n.setFrequency(n.getFrequency() + 1);
+        }
+
+        if (root.getFrequency() >= WEIGHT_LIMIT) {
+            reset();
+        }
+    }
+
+    /**
+     * This method exchanges two subtrees, along with their numbers.
+     * @param a     The root of one subtree.
+     * @param b     The root of the other subtree; neither may be an ancestor of the other.
+     */
+    private void swap(FreqTreeNode a, FreqTreeNode b) {
+        FreqTreeNode parentA = a.getParent();
+        FreqTreeNode parentB = b.getParent();
+        boolean aIsLeft = parentA.getLeft() == a;
+        boolean bIsLeft = parentB.getLeft() == b;
+
+        if (parentA == parentB) {
+            parentA.setLeft(aIsLeft ? b : a);
+            parentA.setRight(aIsLeft ? a : b);
+        } else {
+            if (aIsLeft) {
+                parentA.setLeft(b);
+            } else {
+                parentA.setRight(b);
+            }
+            if (bIsLeft) {
+                parentB.setLeft(a);
+            } else {
+                parentB.setRight(a);
+            }
+            a.setParent(parentB);
+            b.setParent(parentA);
+        }
+
+        int orderA = a.getOrder();
+        a.setOrder(b.getOrder());
+        b.setOrder(orderA);
+        numbered[a.getOrder()] = a;
+        numbered[b.getOrder()] = b;
+    }
+
+    /**
+     * This method numbers a new node after all the others.
+     * @param n     The new node.
+     */
+    private void addNode(FreqTreeNode n) {
+        if (nodeCount == numbered.length) {
+            numbered = Arrays.copyOf(numbered, nodeCount * 2);
+        }
+        n.setOrder(nodeCount);
+        numbered[nodeCount++] = n;
+    }
+
+    /**
+     * This method finds the leaf of a symbol.
+     * @param symbol    The symbol.
+     * @return          The symbol's leaf, or null if it has not been seen.
+     */
+    private FreqTreeNode leaf(char symbol) {
+        return symbol < leaves.length ? leaves[symbol] : null;
+    }
+}
@@ -0,0 +1,110 @@
+import java.nio.ByteBuffer;
+
+/**
+ * This class reads a packed bit stream written by BitWriter. Bytes are loaded into a 64-bit
+ * window so that a whole Huffman code can be peeked at and then skipped in one step.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class BitReader {
+
+    private final ByteBuffer buffer;
+    private int nextByte;
+    private final int endByte;
+    private long bitsRemaining;
+    private long window = 0;
+    private int windowBits = 0;
+
+    /**
+     * Constructor for a reader over a byte array.
+     * @param data          The packed bytes.
+     * @param bitLength     The number of valid bits in the array.
+     */
+    public BitReader(byte[] data, long bitLength) {
+        this(ByteBuffer.wrap(data), 0, bitLength);
+    }
+
+    /**
+     * Constructor for a reader over part of a ByteBuffer. The buffer's position is not changed.
+     * @param buffer        The buffer holding the packed bytes.
+     * @param offset        Index of the first byte of the stream.
+     * @param bitLength     The number of valid bits in the stream.
+     */
+    public BitReader(ByteBuffer buffer, int offset, long bitLength) {
+        this(buffer, offset, 0, bitLength);
+    }
+
+    /**
+     * Constructor for a reader over a range of bits within a stream, which need not start or
+     * end on a byte boundary. The buffer's position is not changed.
+     * @param buffer        The buffer holding the packed bytes.
+     * @param offset        Index of the first byte of the stream.
+     * @param fromBit       The bit of the stream at which reading starts.
+     * @param toBit         The bit of the stream at which reading stops.
+     */
+    public BitReader(ByteBuffer buffer, int offset, long fromBit, long toBit) {
+        this.buffer = buffer;
+        this.nextByte = offset + (int) (fromBit >>> 3);
+        this.endByte = offset + (int) ((toBit + 7) >>> 3);
+        this.bitsRemaining = toBit - fromBit;
+
+        // Drop the bits of the first byte that come before the range
+        int skip = (int) (fromBit & 7);
+        if (skip > 0) {
+            window = buffer.get(nextByte++) & 0xFF;
+            windowBits = 8 - skip;
+        }
+    }
+
+    /**
+     * Getter method for the number of unread bits.
+     * @return      The bits left in the stream.
+     */
+    public long getBitsRemaining() {
+        return this.bitsRemaining;
+    }
+
+    /**
+     * This method returns the next bits of the stream without consuming them. Bits past the
+     * end of the stream read as zero.
+     * @param count     The number of bits to peek at, from 0 to 56.
+     * @return          The bits, right-aligned.
+     */
+    public long peekBits(int count) {
+
+        // Top up the window a byte at a time
+        while (windowBits <= 56 && nextByte < endByte) {
+            window = (window << 8) | (buffer.get(nextByte++) & 0xFF);
+            windowBits += 8;
+        }
+
+        long bits;
+        if (windowBits >= count) {
+            bits = window >>> (windowBits - count);
+        } else {
+            bits = window << (count - windowBits);
+        }
+        return bits & ((1L << count) - 1);
+    }
+
+    /**
+     * This method consumes bits that have already been peeked at.
+     * @param count     The number of bits to skip.
+     */
+    public void skipBits(int count) {
+        windowBits -= count;
+        bitsRemaining -= count;
+    }
+
+    /**
+     * This method reads and consumes the next bits of the stream.
+     * @param count     The number of bits to read, from 0 to 56.
+     * @return          The bits, right-aligned.
+     */
+    public long readBits(int count) {
+        long bits = peekBits(count);
+        skipBits(count);
+        return bits;
+    }
+}
@@ -0,0 +1,169 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class packs variable-length bit codes into bytes. Bits are collected in a 64-bit
+ * accumulator, most significant bit first, and flushed a whole byte at a time into a growable
+ * byte array.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class BitWriter {
+
+    private byte[] buffer;
+    private int size = 0;
+    private long accumulator = 0;
+    private int accumulatorBits = 0;
+    private long bitLength = 0;
+
+    /**
+     * Default constructor for the bit writer.
+     */
+    public BitWriter() {
+        this(64);
+    }
+
+    /**
+     * Constructor for the bit writer when the output size can be estimated.
+     * @param initialCapacity   Initial size of the byte buffer.
+     */
+    public BitWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(initialCapacity, 8)];
+    }
+
+    /**
+     * Constructor for a writer that continues a stream already packed into an array, writing
+     * its bits into that same array. Several writers may share one array, each starting where
+     * the previous one's bits end, as long as each calls mergeLastByte() once all are done,
+     * from the last writer back to the first.
+     * @param packed        The array holding the stream, with at least 8 bytes to spare past
+     * the end of everything that will be written to it.
+     * @param bitLength     The number of bits already in the stream.
+     */
+    BitWriter(byte[] packed, long bitLength) {
+        this.buffer = packed;
+        this.size = (int) (bitLength >>> 3);
+        this.accumulatorBits = (int) (bitLength & 7);
+        this.accumulator = accumulatorBits > 0
+            ? (packed[size] & 0xFF) >>> (8 - accumulatorBits) : 0;
+        this.bitLength = bitLength;
+    }
+
+    /**
+     * This method appends the low bits of a value to the stream.
+     * @param value     The bits to be written, right-aligned.
+     * @param count     The number of bits to write, from 0 to 32.
+     */
+    public void writeBits(int value, int count) {
+
+        // Make room in the accumulator if the new bits would overflow it
+        if (accumulatorBits + count > 64) {
+            flushBytes();
+        }
+
+        accumulator = (accumulator << count)
+            | (value & ((1L << count) - 1));
+        accumulatorBits += count;
+        bitLength += count;
+    }
+
+    /**
+     * This method appends every bit written to another writer, so that streams encoded
+     * separately can be joined without padding between them.
+     * @param other     The writer whose bits are appended.
+     */
+    public void append(BitWriter other) {
+        other.flushBytes();
+
+        // Copy whole bytes directly when this stream ends on a byte boundary
+        if ((bitLength & 7) == 0) {
+            flushBytes();
+            if (size + other.size + 8 > buffer.length) {
+                buffer = Arrays.copyOf(buffer,
+                    Math.max(buffer.length * 2, size + other.size + 8));
+            }
+            System.arraycopy(other.buffer, 0, buffer, size, other.size);
+            size += other.size;
+            bitLength += (long) other.size << 3;
+        } else {
+            for (int i = 0; i < other.size; i++) {
+                writeBits(other.buffer[i], 8);
+            }
+        }
+
+        if (other.accumulatorBits > 0) {
+            writeBits((int) other.accumulator, other.accumulatorBits);
+        }
+    }
+
+    /**
+     * Getter method for the number of bits written so far.
+     * @return      The bit length of the stream.
+     */
+    public long getBitLength() {
+        return this.bitLength;
+    }
+
+    /**
+     * This method returns the packed stream, with the last byte padded with zero bits.
+     * @return      A new array holding the packed bits.
+     */
+    public byte[] toByteArray() {
+        flushBytes();
+        byte[] packed = Arrays.copyOf(buffer, (int) ((bitLength + 7) >>> 3));
+        if (accumulatorBits > 0) {
+            packed[size] = (byte) (accumulator << (8 - accumulatorBits));
+        }
+        return packed;
+    }
+
+    /**
+     * This method copies the packed stream into a ByteBuffer, with the last byte padded with
+     * zero bits.
+     * @param dst       The buffer to be written to.
+     */
+    public void writeTo(ByteBuffer dst) {
+        flushBytes();
+        dst.put(buffer, 0, size);
+        if (accumulatorBits > 0) {
+            dst.put((byte) (accumulator << (8 - accumulatorBits)));
+        }
+    }
+
+    /**
+     * This method writes out the writer's whole bytes, then ORs the bits that do not fill a
+     * byte into the byte of the array they belong in. A writer sharing an array never writes
+     * that byte otherwise, since the writer after it writes the rest of the byte; that writer
+     * must therefore be merged first.
+     */
+    void mergeLastByte() {
+        flushBytes();
+        if (accumulatorBits > 0) {
+            buffer[size] |= (byte) (accumulator << (8 - accumulatorBits));
+        }
+    }
+
+    /**
+     * This method clears the writer so it can be reused for another stream.
+     */
+    public void reset() {
+        size = 0;
+        accumulator = 0;
+        accumulatorBits = 0;
+        bitLength = 0;
+    }
+
+    /**
+     * This method moves every complete byte from the accumulator into the buffer.
+     */
+    private void flushBytes() {
+        if (size + 8 > buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        while (accumulatorBits >= 8) {
+            accumulatorBits -= 8;
+            buffer[size++] = (byte) (accumulator >>> accumulatorBits);
+        }
+    }
+}
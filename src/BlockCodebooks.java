@@ -0,0 +1,300 @@
+import java.util.Arrays;
+
+/**
+ * This class trains several Huffman codebooks for one input, in the way bzip2 does, so that
+ * text whose letter frequencies change from part to part is coded with codes that fit each
+ * part. The input is cut into blocks of a fixed number of symbols and the blocks are shared out
+ * among the tables. Each table is then rebuilt from the letter counts of its blocks, and each
+ * block moves to the table that codes it in the fewest bits; a few rounds of this settle the
+ * tables. Every table has a code for every letter of the input, so any block can use any table.
+ *
+ * The tables are canonical codes, stored in a packed file as a header of one byte holding the
+ * number of tables, followed by the code length header of each table as written by
+ * CodeLengths.toHeader().
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class BlockCodebooks {
+
+    /**
+     * Default number of symbols in a block.
+     */
+    static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    /**
+     * Most tables that a selector byte can choose between.
+     */
+    static final int MAX_TABLES = 255;
+
+    /**
+     * Number of rounds of moving blocks between tables.
+     */
+    static final int ITERATIONS = 4;
+
+    private final FreqTreeNode[][] tables;
+    private final int[][] lengths;
+    private final int[] blocksPerTable;
+    private final long symbols;
+    private final long blockBits;
+    private final long singleTableBits;
+
+    /**
+     * Constructor for a set of trained tables.
+     * @param tables            The frequency table of each codebook, with codes assigned.
+     * @param lengths           The code length of each entry of each table.
+     * @param blocksPerTable    The number of blocks that chose each table.
+     * @param symbols           The number of symbols in the input.
+     * @param blockBits         The bits needed when each block uses its cheapest table.
+     * @param singleTableBits   The bits needed with one table trained on the whole input.
+     */
+    private BlockCodebooks(FreqTreeNode[][] tables, int[][] lengths, int[] blocksPerTable,
+        long symbols, long blockBits, long singleTableBits) {
+        this.tables = tables;
+        this.lengths = lengths;
+        this.blocksPerTable = blocksPerTable;
+        this.symbols = symbols;
+        this.blockBits = blockBits;
+        this.singleTableBits = singleTableBits;
+    }
+
+    /**
+     * This method trains a set of tables on the blocks of the given phrases. The phrases are
+     * cut into blocks just as ParallelHuffmanEncoder cuts them into chunks.
+     * @param phrases       The clear text phrases.
+     * @param tableCount    The number of tables, from 1 to MAX_TABLES.
+     * @param blockSize     The number of symbols in each block.
+     * @param maxLength     The longest code allowed.
+     * @return              The trained tables.
+     * @throws IllegalArgumentException If the number of tables is out of range, or maxLength
+     * bits cannot give each letter a code.
+     */
+    public static BlockCodebooks train(String[] phrases, int tableCount, int blockSize,
+        int maxLength) {
+        if (tableCount < 1 || tableCount > MAX_TABLES) {
+            throw new IllegalArgumentException("Number of tables must be from 1 to "
+                + MAX_TABLES + ".");
+        }
+        blockSize = Math.max(1, blockSize);
+
+        // Number the letters that appear in the input
+        int[] letterIndex = new int[Character.MAX_VALUE + 1];
+        Arrays.fill(letterIndex, -1);
+        StringBuilder alphabet = new StringBuilder();
+        int blockCount = 0;
+        for (String phrase : phrases) {
+            for (int i = 0; i < phrase.length(); i++) {
+                if (letterIndex[phrase.charAt(i)] < 0) {
+                    letterIndex[phrase.charAt(i)] = alphabet.length();
+                    alphabet.append(phrase.charAt(i));
+                }
+            }
+            blockCount += Math.max(1, (phrase.length() + blockSize - 1) / blockSize);
+        }
+
+        // Count the letters of each block
+        int[][] counts = new int[blockCount][alphabet.length()];
+        int block = 0;
+        long symbols = 0;
+        for (String phrase : phrases) {
+            int blocks = Math.max(1, (phrase.length() + blockSize - 1) / blockSize);
+            for (int i = 0; i < phrase.length(); i++) {
+                counts[block + i / blockSize][letterIndex[phrase.charAt(i)]]++;
+            }
+            block += blocks;
+            symbols += phrase.length();
+        }
+
+        // One table fitted to the whole input, for comparison
+        int[] allBlocks = new int[blockCount];
+        int[][] single = trainLengths(counts, allBlocks, 1, alphabet.length(), maxLength);
+        long singleTableBits = 0;
+        for (int b = 0; b < blockCount; b++) {
+            singleTableBits += cost(counts[b], single[0]);
+        }
+
+        // Start with runs of neighbouring blocks, then move each block to
+        // its cheapest table and refit the tables to their new blocks
+        int[] choice = new int[blockCount];
+        for (int b = 0; b < blockCount; b++) {
+            choice[b] = (int) ((long) b * tableCount / blockCount);
+        }
+        int[][] lengths = null;
+        long blockBits = 0;
+        for (int round = 0; round < ITERATIONS; round++) {
+            lengths = trainLengths(counts, choice, tableCount, alphabet.length(), maxLength);
+            blockBits = 0;
+            for (int b = 0; b < blockCount; b++) {
+                long best = Long.MAX_VALUE;
+                for (int t = 0; t < tableCount; t++) {
+                    long bits = cost(counts[b], lengths[t]);
+                    if (bits < best) {
+                        best = bits;
+                        choice[b] = t;
+                    }
+                }
+                blockBits += best;
+            }
+        }
+
+        // Give every table canonical codes over the whole alphabet
+        FreqTreeNode[][] tables = new FreqTreeNode[tableCount][];
+        int[] blocksPerTable = new int[tableCount];
+        for (int b = 0; b < blockCount; b++) {
+            blocksPerTable[choice[b]]++;
+        }
+        for (int t = 0; t < tableCount; t++) {
+            tables[t] = new FreqTreeNode[alphabet.length()];
+            for (int s = 0; s < alphabet.length(); s++) {
+                tables[t][s] = new FreqTreeNode(alphabet.charAt(s), 0);
+            }
+            CodeLengths.assignCanonicalCodes(tables[t], lengths[t]);
+        }
+        return new BlockCodebooks(tables, lengths, blocksPerTable, symbols, blockBits,
+            singleTableBits);
+    }
+
+    /**
+     * This method compiles the codes of each table.
+     * @return      One codebook per table, in selector order.
+     */
+    public HuffmanCodebook[] getCodebooks() {
+        HuffmanCodebook[] codebooks = new HuffmanCodebook[tables.length];
+        for (int t = 0; t < tables.length; t++) {
+            codebooks[t] = new HuffmanCodebook(tables[t]);
+        }
+        return codebooks;
+    }
+
+    /**
+     * This method writes the code lengths of every table as one header.
+     * @return      The header bytes.
+     */
+    public byte[] toHeader() {
+        byte[][] headers = new byte[tables.length][];
+        int size = 1;
+        for (int t = 0; t < tables.length; t++) {
+            headers[t] = CodeLengths.toHeader(tables[t], lengths[t]);
+            size += headers[t].length;
+        }
+
+        byte[] header = new byte[size];
+        header[0] = (byte) tables.length;
+        int offset = 1;
+        for (byte[] tableHeader : headers) {
+            System.arraycopy(tableHeader, 0, header, offset, tableHeader.length);
+            offset += tableHeader.length;
+        }
+        return header;
+    }
+
+    /**
+     * This method builds a decode table for each table of a header written by toHeader().
+     * @param header    The header bytes.
+     * @return          The decode tables, in selector order.
+     * @throws IllegalArgumentException If the header is malformed.
+     */
+    public static HuffmanDecodeTable[] decodeTables(byte[] header) {
+        if (header.length < 1 || (header[0] & 0xFF) == 0) {
+            throw new IllegalArgumentException("Block table header is empty.");
+        }
+        HuffmanDecodeTable[] decodeTables = new HuffmanDecodeTable[header[0] & 0xFF];
+        int offset = 1;
+        for (int t = 0; t < decodeTables.length; t++) {
+            int size = CodeLengths.headerSize(header, offset);
+            decodeTables[t] = CodeLengths.decodeTable(
+                Arrays.copyOfRange(header, offset, offset + size));
+            offset += size;
+        }
+        if (offset != header.length) {
+            throw new IllegalArgumentException("Block table header is malformed.");
+        }
+        return decodeTables;
+    }
+
+    /**
+     * This method describes how well the tables fit the input.
+     * @return      A summary of the bits per symbol and the blocks that chose each table.
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("%d tables over %d blocks: %.4f bits/symbol instead of "
+                + "%.4f with one table (%.2f%% smaller output, before headers).%n",
+            tables.length, sum(blocksPerTable), bitsPerSymbol(blockBits),
+            bitsPerSymbol(singleTableBits), singleTableBits == 0 ? 0
+                : (1 - (double) blockBits / singleTableBits) * 100));
+        summary.append("Blocks per table:");
+        for (int blocks : blocksPerTable) {
+            summary.append(' ').append(blocks);
+        }
+        summary.append(String.format("%n"));
+        return summary.toString();
+    }
+
+    /**
+     * This method fits code lengths to the blocks that chose each table. Every letter's count
+     * is raised by one, so that each table has a code for every letter.
+     * @param counts        The letter counts of each block.
+     * @param choice        The table chosen by each block.
+     * @param tableCount    The number of tables.
+     * @param letters       The number of letters in the alphabet.
+     * @param maxLength     The longest code allowed.
+     * @return              The code length of each letter in each table.
+     */
+    private static int[][] trainLengths(int[][] counts, int[] choice, int tableCount,
+        int letters, int maxLength) {
+        long[][] totals = new long[tableCount][letters];
+        for (int b = 0; b < counts.length; b++) {
+            for (int s = 0; s < letters; s++) {
+                totals[choice[b]][s] += counts[b][s];
+            }
+        }
+
+        int[][] lengths = new int[tableCount][];
+        FreqTreeNode[] freqTable = new FreqTreeNode[letters];
+        for (int t = 0; t < tableCount; t++) {
+            for (int s = 0; s < letters; s++) {
+                freqTable[s] = new FreqTreeNode((char) s,
+                    (int) Math.min(totals[t][s], Integer.MAX_VALUE - 1) + 1);
+            }
+            lengths[t] = CodeLengths.packageMerge(freqTable, maxLength);
+        }
+        return lengths;
+    }
+
+    /**
+     * This method computes the bits needed to code a block with one table.
+     * @param counts    The letter counts of the block.
+     * @param lengths   The code length of each letter in the table.
+     * @return          The number of bits.
+     */
+    private static long cost(int[] counts, int[] lengths) {
+        long bits = 0;
+        for (int s = 0; s < counts.length; s++) {
+            bits += (long) counts[s] * lengths[s];
+        }
+        return bits;
+    }
+
+    /**
+     * This method adds up a set of counts.
+     * @param values    The counts.
+     * @return          The total.
+     */
+    private static int sum(int[] values) {
+        int total = 0;
+        for (int value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    /**
+     * This method divides a number of bits by the number of symbols in the input.
+     * @param bits      The number of bits.
+     * @return          The bits per symbol.
+     */
+    private double bitsPerSymbol(long bits) {
+        return symbols == 0 ? 0 : (double) bits / symbols;
+    }
+}
@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * This class normalizes Windows-1252 clear text a byte at a time. A 256-entry table, built
+ * once from the charset, says what each byte becomes: nothing for punctuation, '|' and
+ * whitespace, the phrase separator for 0xA0, and otherwise the upper-cased letter. Upper-casing
+ * follows String.toUpperCase(), so the one byte that upper-cases to two letters (0xDF, 'ß',
+ * which becomes "SS") has both letters in its entry. This gives the same text as removing
+ * "[\\p{P}|\\s]" from each line and upper-casing it, with one table lookup per byte. Bytes the
+ * charset does not define, which decode to U+FFFD, are dropped, as SymbolHistogram does when it
+ * counts them. Text that has already been decoded, such as a request to CodecServer, is
+ * normalized a character at a time by entryOf(), from which the table is built.
+ *
+ * normalize() reads a channel a buffer at a time and hands each symbol and phrase end straight
+ * to a Sink, such as the encoder of HuffmanStream, so no copy of the text is made. readPhrases()
+ * uses the same pass to collect the phrases for the in-memory report.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class ClearTextNormalizer {
+
+    /**
+     * Table entry for a byte that is dropped.
+     */
+    static final int REMOVED = -1;
+
+    /**
+     * Table entry for the phrase separator.
+     */
+    static final int SEPARATOR = -2;
+
+    private static final int[] TABLE = buildTable();
+
+    /**
+     * This interface receives the normalized text.
+     */
+    interface Sink {
+
+        /**
+         * This method receives one symbol.
+         * @param c             The upper-cased letter.
+         * @throws IOException  If the symbol cannot be passed on.
+         */
+        void symbol(char c) throws IOException;
+
+        /**
+         * This method receives a phrase separator.
+         * @throws IOException  If the separator cannot be passed on.
+         */
+        void separator() throws IOException;
+    }
+
+    /**
+     * This method looks up what a byte of clear text becomes.
+     * @param b     The byte.
+     * @return      REMOVED, SEPARATOR, or the letter in the low 16 bits, with a second letter
+     * in the high 16 bits if the byte upper-cases to two letters.
+     */
+    static int lookup(byte b) {
+        return TABLE[b & 0xFF];
+    }
+
+    /**
+     * This method works out what a character of clear text becomes.
+     * @param c     The character.
+     * @return      REMOVED, SEPARATOR, or the letter in the low 16 bits, with a second letter
+     * in the high 16 bits if the character upper-cases to two letters.
+     */
+    static int entryOf(char c) {
+        if (c == HuffmanStream.PHRASE_SEPARATOR) {
+            return SEPARATOR;
+        } else if (HuffmanStream.isRemoved(c) || c == '\uFFFD') {
+            return REMOVED;
+        }
+        String upper = String.valueOf(c).toUpperCase();
+        int entry = upper.charAt(0);
+        if (upper.length() > 1) {
+            entry |= upper.charAt(1) << 16;
+        }
+        return entry;
+    }
+
+    /**
+     * This method normalizes a channel a buffer at a time, passing each symbol and separator to
+     * the sink as its byte is read.
+     * @param in            The channel containing the clear text.
+     * @param sink          The receiver of the normalized text.
+     * @throws IOException  If the channel or the sink fails.
+     */
+    public static void normalize(ReadableByteChannel in, Sink sink) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(HuffmanStream.BUFFER_SIZE);
+        while (in.read(bytes) >= 0) {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                int entry = TABLE[bytes.get() & 0xFF];
+                if (entry >= 0) {
+                    sink.symbol((char) entry);
+                    if (entry > Character.MAX_VALUE) {
+                        sink.symbol((char) (entry >>> 16));
+                    }
+                } else if (entry == SEPARATOR) {
+                    sink.separator();
+                }
+            }
+            bytes.clear();
+        }
+    }
+
+    /**
+     * This method reads a clear text file and normalizes it into phrases, in a single pass
+     * over its bytes. As with String.split(), phrases that are empty at the end of the file are
+     * dropped, and a file with no letters and no separators gives one empty phrase.
+     * @param filename      The name of the clear text file.
+     * @return              The normalized phrases.
+     * @throws IOException  If the file cannot be read.
+     */
+    public static String[] readPhrases(String filename) throws IOException {
+        PhraseCollector phrases = new PhraseCollector();
+        try (FileChannel in = FileChannel.open(Paths.get(filename))) {
+            normalize(in, phrases);
+        }
+        return phrases.toPhrases();
+    }
+
+    /**
+     * This class collects normalized text into one array of letters and the end of each
+     * phrase in it, from which readPhrases() cuts the phrases.
+     */
+    private static class PhraseCollector implements Sink {
+
+        private char[] chars = new char[16];
+        private int[] phraseEnds = new int[16];
+        private int phraseCount = 0;
+        private int length = 0;
+
+        @Override
+        public void symbol(char c) {
+            if (length == chars.length) {
+                chars = Arrays.copyOf(chars, chars.length * 2);
+            }
+            chars[length++] = c;
+        }
+
+        @Override
+        public void separator() {
+            if (phraseCount == phraseEnds.length) {
+                phraseEnds = Arrays.copyOf(phraseEnds, phraseCount * 2);
+            }
+            phraseEnds[phraseCount++] = length;
+        }
+
+        /**
+         * This method cuts the collected text into phrases.
+         * @return      The phrases, as readPhrases() gives them.
+         */
+        String[] toPhrases() {
+
+            // Text with no letters has one empty phrase, or none if it has separators
+            if (length == 0) {
+                return phraseCount == 0 ? new String[] {""} : new String[0];
+            }
+
+            // The text after the last separator is the last phrase; empty ones are dropped
+            separator();
+            while (phraseCount > 1
+                && phraseEnds[phraseCount - 1] == phraseEnds[phraseCount - 2]) {
+                phraseCount--;
+            }
+
+            String[] phrases = new String[phraseCount];
+            int start = 0;
+            for (int i = 0; i < phraseCount; i++) {
+                phrases[i] = new String(chars, start, phraseEnds[i] - start);
+                start = phraseEnds[i];
+            }
+            return phrases;
+        }
+    }
+
+    /**
+     * This method builds the table from the charset.
+     * @return      The entry of each byte.
+     */
+    private static int[] buildTable() {
+        byte[] bytes = new byte[256];
+        for (int b = 0; b < bytes.length; b++) {
+            bytes[b] = (byte) b;
+        }
+        CharBuffer decoded = HuffmanStream.CHARSET.decode(ByteBuffer.wrap(bytes));
+
+        int[] table = new int[256];
+        for (int b = 0; b < table.length; b++) {
+            table[b] = entryOf(decoded.get(b));
+        }
+        return table;
+    }
+}
@@ -0,0 +1,470 @@
+import java.util.Arrays;
+
+/**
+ * This class works with Huffman codes through their lengths alone. It can compute optimal code
+ * lengths under a limit on the longest code with the package-merge algorithm, and it can build
+ * a tree from any set of lengths by assigning canonical codes: symbols are ordered by code
+ * length and then by character, and each symbol's code is the previous code plus one, extended
+ * with zeros to the new length.
+ *
+ * Since canonical codes follow from the lengths alone, they can be stored as a compact header:
+ *   char   the number of runs of neighbouring symbols
+ *   for each run:
+ *     char   the first symbol of the run
+ *     char   the last symbol of the run
+ *     byte[] the code length of each symbol from the first to the last, or 0 if it has no code
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class CodeLengths {
+
+    /**
+     * Number of bytes that start each run of a code length header.
+     */
+    static final int RUN_HEADER_SIZE = 4;
+
+    /**
+     * This method reads the code length of each entry of the frequency table. The Huffman codes
+     * must already have been assigned.
+     * @param freqTable     The frequency table; null entries get a length of 0.
+     * @return              The length of each entry's code.
+     */
+    public static int[] fromTable(FreqTreeNode[] freqTable) {
+        int[] lengths = new int[freqTable.length];
+        for (int i = 0; i < freqTable.length; i++) {
+            if (freqTable[i] != null) {
+                lengths[i] = freqTable[i].getHuffmanCode().length();
+            }
+        }
+        return lengths;
+    }
+
+    /**
+     * This method finds the longest of a set of code lengths.
+     * @param lengths   The code lengths.
+     * @return          The largest length.
+     */
+    public static int max(int[] lengths) {
+        int longest = 0;
+        for (int length : lengths) {
+            longest = Math.max(longest, length);
+        }
+        return longest;
+    }
+
+    /**
+     * This method computes the average code length, weighted by frequency.
+     * @param freqTable     The frequency table.
+     * @param lengths       The code length of each entry.
+     * @return              The average number of bits per symbol.
+     */
+    public static double averageLength(FreqTreeNode[] freqTable, int[] lengths) {
+        long bits = 0;
+        long symbols = 0;
+        for (int i = 0; i < freqTable.length; i++) {
+            if (freqTable[i] != null) {
+                bits += (long) freqTable[i].getFrequency() * lengths[i];
+                symbols += freqTable[i].getFrequency();
+            }
+        }
+        return symbols == 0 ? 0 : (double) bits / symbols;
+    }
+
+    /**
+     * This method computes the code lengths that minimize the encoded size when no code may be
+     * longer than maxLength, using the package-merge algorithm.
+     *
+     * Each level of the algorithm merges the symbols, sorted by frequency, with "packages"
+     * formed by pairing adjacent items of the level below. The first 2n - 2 items of the top
+     * level are selected, and a symbol's code length is the number of times it appears among
+     * them, counting the contents of selected packages.
+     *
+     * @param freqTable     The frequency table; null entries get a length of 0.
+     * @param maxLength     The longest code allowed.
+     * @return              The length of each entry's code.
+     * @throws IllegalArgumentException If maxLength bits cannot give each symbol a code.
+     */
+    public static int[] packageMerge(FreqTreeNode[] freqTable, int maxLength) {
+        int[] lengths = new int[freqTable.length];
+
+        // Sort the symbols by frequency, then by their order in the table
+        int n = 0;
+        for (FreqTreeNode node : freqTable) {
+            if (node != null) {
+                n++;
+            }
+        }
+        if (n < 2) {
+            for (int i = 0; i < freqTable.length; i++) {
+                if (freqTable[i] != null) {
+                    lengths[i] = 1;
+                }
+            }
+            return lengths;
+        }
+        if (maxLength < 1 || maxLength < 32 && (1L << maxLength) < n) {
+            throw new IllegalArgumentException(n + " symbols cannot have codes of "
+                + maxLength + " bits or less.");
+        }
+        long[] keys = new long[n];
+        int k = 0;
+        for (int i = 0; i < freqTable.length; i++) {
+            if (freqTable[i] != null) {
+                keys[k++] = ((long) freqTable[i].getFrequency() << 32) | i;
+            }
+        }
+        Arrays.sort(keys);
+
+        // Build the levels from the bottom up; a negative item is a package
+        // whose contents are items 2p and 2p + 1 of the level below
+        long[][] weight = new long[maxLength][];
+        int[][] item = new int[maxLength][];
+        weight[0] = new long[n];
+        item[0] = new int[n];
+        for (int i = 0; i < n; i++) {
+            weight[0][i] = keys[i] >>> 32;
+            item[0][i] = (int) keys[i];
+        }
+        for (int level = 1; level < maxLength; level++) {
+            int packages = weight[level - 1].length / 2;
+            weight[level] = new long[n + packages];
+            item[level] = new int[n + packages];
+
+            // Merge the symbols with the packages, symbols first on ties
+            int s = 0;
+            int p = 0;
+            for (int j = 0; j < n + packages; j++) {
+                long packageWeight = p < packages
+                    ? weight[level - 1][2 * p] + weight[level - 1][2 * p + 1]
+                    : Long.MAX_VALUE;
+                if (s < n && weight[0][s] <= packageWeight) {
+                    weight[level][j] = weight[0][s];
+                    item[level][j] = item[0][s++];
+                } else {
+                    weight[level][j] = packageWeight;
+                    item[level][j] = ~p++;
+                }
+            }
+        }
+
+        // Select the first 2n - 2 items at the top, then expand the packages
+        // among them, which are always the first ones formed, level by level
+        int selected = 2 * n - 2;
+        for (int level = maxLength - 1; level >= 0; level--) {
+            int packages = 0;
+            for (int j = 0; j < selected; j++) {
+                if (item[level][j] >= 0) {
+                    lengths[item[level][j]]++;
+                } else {
+                    packages++;
+                }
+            }
+            selected = 2 * packages;
+        }
+        return lengths;
+    }
+
+    /**
+     * This method assigns canonical codes to a set of symbols.
+     * @param symbols   The symbols.
+     * @param lengths   The code length of each symbol, or 0 for none. They must satisfy the
+     * Kraft inequality and be no longer than 32 bits.
+     * @return          The code of each symbol, right-aligned.
+     */
+    public static int[] canonicalCodes(char[] symbols, int[] lengths) {
+
+        // Order the symbols by code length, then by character
+        int n = 0;
+        for (int length : lengths) {
+            if (length > 0) {
+                n++;
+            }
+        }
+        long[] keys = new long[n];
+        int k = 0;
+        for (int i = 0; i < symbols.length; i++) {
+            if (lengths[i] > 0) {
+                keys[k++] = ((long) lengths[i] << 48) | ((long) symbols[i] << 32) | i;
+            }
+        }
+        Arrays.sort(keys);
+
+        int[] codes = new int[symbols.length];
+        long code = 0;
+        int previousLength = 0;
+        for (long key : keys) {
+            int index = (int) key;
+            int length = (int) (key >>> 48);
+            code <<= length - previousLength;
+            previousLength = length;
+            codes[index] = (int) code;
+            code++;
+        }
+        return codes;
+    }
+
+    /**
+     * This method gives each entry of the frequency table the canonical code of the given
+     * length, without building a tree.
+     * @param freqTable     The frequency table; null entries are skipped.
+     * @param lengths       The code length of each entry, or 0 for none. They must satisfy the
+     * Kraft inequality and be no longer than 32 bits.
+     */
+    public static void assignCanonicalCodes(FreqTreeNode[] freqTable, int[] lengths) {
+        char[] symbols = new char[freqTable.length];
+        int[] tableLengths = new int[freqTable.length];
+        for (int i = 0; i < freqTable.length; i++) {
+            if (freqTable[i] != null) {
+                symbols[i] = freqTable[i].getCharacter();
+                tableLengths[i] = lengths[i];
+            }
+        }
+        int[] codes = canonicalCodes(symbols, tableLengths);
+
+        for (int i = 0; i < freqTable.length; i++) {
+            if (freqTable[i] == null) {
+                continue;
+            }
+            char[] bits = new char[tableLengths[i]];
+            for (int bit = 0; bit < bits.length; bit++) {
+                bits[bit] = (char) ('0' + ((codes[i] >>> (bits.length - 1 - bit)) & 1));
+            }
+            freqTable[i].setHuffmanCode(new String(bits));
+        }
+    }
+
+    /**
+     * This method builds a Huffman tree that gives each entry of the frequency table a canonical
+     * code of the given length. Internal nodes get the sum of their children's frequencies.
+     * @param freqTable     The frequency table; its nodes become the leaves of the tree.
+     * @param lengths       The code length of each entry. They must satisfy the Kraft equality,
+     * as the lengths of any Huffman code do.
+     * @return              The root node of the tree.
+     */
+    public static FreqTreeNode buildCanonicalTree(FreqTreeNode[] freqTable,
+        int[] lengths) {
+
+        char[] symbols = new char[freqTable.length];
+        int[] tableLengths = new int[freqTable.length];
+        for (int i = 0; i < freqTable.length; i++) {
+            if (freqTable[i] != null) {
+                symbols[i] = freqTable[i].getCharacter();
+                tableLengths[i] = lengths[i];
+            }
+        }
+        return buildTree(freqTable, canonicalCodes(symbols, tableLengths), tableLengths);
+    }
+
+    /**
+     * This method builds the Huffman tree of a set of codes, with 0 bits going left and 1 bits
+     * right. Internal nodes get the sum of their children's frequencies.
+     * @param freqTable     The frequency table; its nodes become the leaves of the tree.
+     * @param codes         The code of each entry, right-aligned.
+     * @param lengths       The code length of each entry, or 0 for entries with no code. The
+     * codes must form a complete prefix code, as the codes of any Huffman tree do.
+     * @return              The root node of the tree.
+     */
+    public static FreqTreeNode buildTree(FreqTreeNode[] freqTable, int[] codes,
+        int[] lengths) {
+        FreqTreeNode root = new FreqTreeNode();
+        for (int index = 0; index < freqTable.length; index++) {
+            int length = lengths[index];
+            if (length == 0) {
+                continue;
+            }
+            int code = codes[index];
+
+            // Walk down the code's path, creating internal nodes as needed
+            FreqTreeNode node = root;
+            for (int bit = length - 1; bit > 0; bit--) {
+                boolean right = ((code >>> bit) & 1) != 0;
+                FreqTreeNode child = right ? node.getRight() : node.getLeft();
+                if (child == null) {
+                    child = new FreqTreeNode();
+                    child.setParent(node);
+                    if (right) {
+                        node.setRight(child);
+                    } else {
+                        node.setLeft(child);
+                    }
+                }
+                node = child;
+            }
+
+            // Hang the leaf from the last bit
+            FreqTreeNode leaf = freqTable[index];
+            leaf.setParent(node);
+            if ((code & 1) != 0) {
+                node.setRight(leaf);
+            } else {
+                node.setLeft(leaf);
+            }
+            if (leaf.getHuffmanSequence() == null) {
+                leaf.setHuffmanSequence(String.valueOf(leaf.getCharacter()));
+            }
+        }
+
+        sumFrequencies(root);
+        return root;
+    }
+
+    /**
+     * This method writes the code lengths of a frequency table as a compact header. Symbols
+     * that are close together share a run, and a new run is started wherever the gap to the
+     * next symbol would cost more than a run's own header, so an alphabet spread over distant
+     * characters, such as letters and private-use tokens, does not store the gap between them.
+     * @param freqTable     The frequency table.
+     * @param lengths       The code length of each entry.
+     * @return              The header bytes.
+     * @throws IllegalArgumentException If a code is longer than a byte can hold.
+     */
+    public static byte[] toHeader(FreqTreeNode[] freqTable, int[] lengths) {
+
+        // Give each coded symbol its length, ordered by character
+        int[] coded = new int[freqTable.length];
+        int codedCount = 0;
+        for (int i = 0; i < freqTable.length; i++) {
+            if (freqTable[i] != null && lengths[i] > 0) {
+                if (lengths[i] > 255) {
+                    throw new IllegalArgumentException("Code for '"
+                        + freqTable[i].getCharacter() + "' is too long for a header.");
+                }
+                coded[codedCount++] = (freqTable[i].getCharacter() << 8) | lengths[i];
+            }
+        }
+        Arrays.sort(coded, 0, codedCount);
+
+        // Cut the symbols into runs, and add up the header's size
+        int[] runStarts = new int[codedCount + 1];
+        int runCount = 0;
+        int size = 2;
+        for (int i = 0; i < codedCount; i++) {
+            int symbol = coded[i] >>> 8;
+            if (i == 0 || symbol - (coded[i - 1] >>> 8) - 1 > RUN_HEADER_SIZE) {
+                runStarts[runCount++] = i;
+                size += RUN_HEADER_SIZE + 1;
+            } else {
+                size += symbol - (coded[i - 1] >>> 8);
+            }
+        }
+        runStarts[runCount] = codedCount;
+
+        byte[] header = new byte[size];
+        header[0] = (byte) (runCount >>> 8);
+        header[1] = (byte) runCount;
+        int offset = 2;
+        for (int r = 0; r < runCount; r++) {
+            int first = coded[runStarts[r]] >>> 8;
+            int last = coded[runStarts[r + 1] - 1] >>> 8;
+            header[offset] = (byte) (first >>> 8);
+            header[offset + 1] = (byte) first;
+            header[offset + 2] = (byte) (last >>> 8);
+            header[offset + 3] = (byte) last;
+            offset += RUN_HEADER_SIZE;
+            for (int i = runStarts[r]; i < runStarts[r + 1]; i++) {
+                header[offset + (coded[i] >>> 8) - first] = (byte) coded[i];
+            }
+            offset += last - first + 1;
+        }
+        return header;
+    }
+
+    /**
+     * This method finds the size of a code length header within a larger array, such as one
+     * holding the headers of several tables.
+     * @param bytes     The array.
+     * @param offset    The index at which the header starts.
+     * @return          The number of bytes in the header.
+     * @throws IllegalArgumentException If the header runs past the end of the array.
+     */
+    public static int headerSize(byte[] bytes, int offset) {
+        if (offset + 2 > bytes.length) {
+            throw new IllegalArgumentException("Code length header is truncated.");
+        }
+        int runCount = ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+        int position = offset + 2;
+        for (int r = 0; r < runCount; r++) {
+            if (position + RUN_HEADER_SIZE > bytes.length) {
+                throw new IllegalArgumentException("Code length header is truncated.");
+            }
+            int first = ((bytes[position] & 0xFF) << 8) | (bytes[position + 1] & 0xFF);
+            int last = ((bytes[position + 2] & 0xFF) << 8) | (bytes[position + 3] & 0xFF);
+            if (last < first) {
+                throw new IllegalArgumentException("Code length header is malformed.");
+            }
+            position += RUN_HEADER_SIZE + last - first + 1;
+            if (position > bytes.length) {
+                throw new IllegalArgumentException("Code length header is truncated.");
+            }
+        }
+        return position - offset;
+    }
+
+    /**
+     * This method builds a decode table straight from a code length header, without a
+     * frequency table or tree.
+     * @param header    The header bytes.
+     * @return          The table for decoding the canonical codes.
+     * @throws IllegalArgumentException If the header is malformed.
+     */
+    public static HuffmanDecodeTable decodeTable(byte[] header) {
+        if (headerSize(header, 0) != header.length) {
+            throw new IllegalArgumentException("Code length header is malformed.");
+        }
+        int runCount = ((header[0] & 0xFF) << 8) | (header[1] & 0xFF);
+        int count = header.length - 2 - RUN_HEADER_SIZE * runCount;
+
+        // The runs must be in order, and the lengths must leave room for every code, or the
+        // codes would overflow
+        char[] symbols = new char[count];
+        int[] lengths = new int[count];
+        int symbolCount = 0;
+        int previous = -1;
+        int offset = 2;
+        long kraftSum = 0;
+        for (int r = 0; r < runCount; r++) {
+            int first = ((header[offset] & 0xFF) << 8) | (header[offset + 1] & 0xFF);
+            int last = ((header[offset + 2] & 0xFF) << 8) | (header[offset + 3] & 0xFF);
+            offset += RUN_HEADER_SIZE;
+            if (first <= previous) {
+                throw new IllegalArgumentException("Code length header is malformed.");
+            }
+            previous = last;
+            for (int c = first; c <= last; c++) {
+                symbols[symbolCount] = (char) c;
+                lengths[symbolCount] = header[offset++] & 0xFF;
+                if (lengths[symbolCount] > HuffmanDecodeTable.MAX_CODE_LENGTH) {
+                    throw new IllegalArgumentException("Code length header has a code of "
+                        + lengths[symbolCount] + " bits.");
+                }
+                if (lengths[symbolCount] > 0) {
+                    kraftSum += 1L << (HuffmanDecodeTable.MAX_CODE_LENGTH
+                        - lengths[symbolCount]);
+                }
+                symbolCount++;
+            }
+        }
+        if (kraftSum > 1L << HuffmanDecodeTable.MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Code length header has too many short codes.");
+        }
+        return new HuffmanDecodeTable(symbols, canonicalCodes(symbols, lengths), lengths);
+    }
+
+    /**
+     * This method sets the frequency of each internal node to the sum of its children's.
+     * @param node      The root of the subtree.
+     * @return          The frequency of the subtree.
+     */
+    private static int sumFrequencies(FreqTreeNode node) {
+        if (node == null) {
+            return 0;
+        }
+        if (node.getLeft() == null && node.getRight() == null) {
+            return node.getFrequency();
+        }
+        node.setFrequency(sumFrequencies(node.getLeft())
+            + sumFrequencies(node.getRight()));
+        return node.getFrequency();
+    }
+}
@@ -0,0 +1,453 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * This class keeps a compiled codebook in a small binary file, so that later runs with the same
+ * frequency table can skip parsing the table, building the tree, assigning codes and building
+ * the decode table. The cache is keyed by a CRC-32 of the frequency table file and of the
+ * options that change the codes; a cache with any other key is stale and is rebuilt. The code
+ * and length of each symbol, and the entries of the decode table, are read straight from the
+ * mapped file. The tree is not stored: it follows from the codes, and only one byte per node is
+ * kept to say how the node's sequence is printed, so it is rebuilt only if the tree is printed.
+ * The file is written beside the old one and moved over it, so a run that stops part way, or
+ * that loads the cache at the same time, never sees a partly written cache.
+ *
+ * The file layout is:
+ *   int    magic number "HUFC"
+ *   long   the key
+ *   int    number of frequency table entries
+ *   for each entry:
+ *     char   the symbol
+ *     int    the frequency
+ *     int    the code, right-aligned
+ *     byte   the code length
+ *   byte[] the decode table, as written by HuffmanDecodeTable.write()
+ *   int    number of nodes in the Huffman tree
+ *   byte[] for each node in preorder, how its sequence is printed: NO_SEQUENCE,
+ *          IN_ORDER for a leaf's own character or the left child's sequence then the right's,
+ *          or RIGHT_FIRST for the right child's sequence then the left's
+ *   int    number of characters in the code length limit summary
+ *   char[] the summary
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class CodebookCache {
+
+    static final int MAGIC = 0x48554643;
+
+    /**
+     * Sequence byte of a node that has no sequence.
+     */
+    static final byte NO_SEQUENCE = 0;
+
+    /**
+     * Sequence byte of a leaf whose sequence is its character, or of an internal node whose
+     * sequence is its left child's followed by its right child's.
+     */
+    static final byte IN_ORDER = 1;
+
+    /**
+     * Sequence byte of an internal node whose sequence is its right child's followed by its
+     * left child's, as when a tie puts the smaller node on the right.
+     */
+    static final byte RIGHT_FIRST = 2;
+
+    /**
+     * The options that change the codes, and so are part of the key.
+     */
+    static final String[] CODE_OPTIONS = {"linearBuild", "maxCodeLength", "canonical"};
+
+    /**
+     * Version of the rules that assign the codes, which is part of the key, so that a cache
+     * written under earlier rules is stale.
+     */
+    static final int CODE_VERSION = 2;
+
+    /**
+     * Number of bytes in each table entry: the symbol, frequency, code and code length.
+     */
+    private static final int ENTRY_BYTES = 11;
+
+    private final FreqTreeNode[] freqTable;
+    private final int[] codes;
+    private final int[] lengths;
+    private final HuffmanCodebook codebook;
+    private final HuffmanDecodeTable decodeTable;
+    private final byte[] sequences;
+    private final String summary;
+    private FreqTreeNode huffmanTree = null;
+
+    /**
+     * Constructor for a codebook loaded from the cache.
+     * @param freqTable     The frequency table, with codes assigned.
+     * @param codes         The code of each entry, right-aligned.
+     * @param lengths       The code length of each entry.
+     * @param codebook      The compiled codes.
+     * @param decodeTable   The decode table.
+     * @param sequences     The sequence byte of each node of the tree, in preorder.
+     * @param summary       The code length limit summary.
+     */
+    private CodebookCache(FreqTreeNode[] freqTable, int[] codes, int[] lengths,
+        HuffmanCodebook codebook, HuffmanDecodeTable decodeTable, byte[] sequences,
+        String summary) {
+        this.freqTable = freqTable;
+        this.codes = codes;
+        this.lengths = lengths;
+        this.codebook = codebook;
+        this.decodeTable = decodeTable;
+        this.sequences = sequences;
+        this.summary = summary;
+    }
+
+    /**
+     * This method computes the key of a frequency table file under the given options. The file
+     * size is kept in the high half of the key and the CRC-32 in the low half.
+     * @param freqTableFilename The name of the frequency table file.
+     * @param options           The options of the run.
+     * @return                  The key.
+     * @throws IOException      If the frequency table cannot be read.
+     */
+    public static long key(String freqTableFilename, Map<String, String> options)
+        throws IOException {
+        byte[] table = Files.readAllBytes(Paths.get(freqTableFilename));
+        CRC32 crc = new CRC32();
+        crc.update(table);
+        crc.update(CODE_VERSION);
+
+        for (String option : CODE_OPTIONS) {
+            if (options.containsKey(option)) {
+                String value = "-" + option + "=" + options.get(option) + "\n";
+                crc.update(value.getBytes(HuffmanStream.CHARSET));
+            }
+        }
+        return ((long) table.length << 32) | crc.getValue();
+    }
+
+    /**
+     * This method memory-maps a cache file and loads the codebook in it.
+     * @param filename      The name of the cache file.
+     * @param key           The key of the current frequency table and options.
+     * @return              The codebook, or null if there is no cache or it is stale.
+     * @throws IOException  If the cache cannot be read.
+     */
+    public static CodebookCache load(String filename, long key) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename))) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        try {
+            if (data.getInt() != MAGIC || data.getLong() != key) {
+                return null;
+            }
+
+            // Read the table entries, restoring each code as a string
+            int count = data.getInt();
+            if (count < 0 || count > data.remaining() / ENTRY_BYTES) {
+                throw new IOException(filename + " is corrupt.");
+            }
+            FreqTreeNode[] freqTable = new FreqTreeNode[count];
+            char[] symbols = new char[freqTable.length];
+            int[] codes = new int[freqTable.length];
+            int[] lengths = new int[freqTable.length];
+            for (int i = 0; i < freqTable.length; i++) {
+                symbols[i] = data.getChar();
+                freqTable[i] = new FreqTreeNode(symbols[i], data.getInt());
+                codes[i] = data.getInt();
+                lengths[i] = data.get() & 0xFF;
+                freqTable[i].setHuffmanCode(toBits(codes[i], lengths[i]));
+            }
+            HuffmanDecodeTable decodeTable = HuffmanDecodeTable.read(data);
+            int nodes = data.getInt();
+            if (nodes < 0 || nodes > data.remaining()) {
+                throw new IOException(filename + " is corrupt.");
+            }
+            byte[] sequences = new byte[nodes];
+            data.get(sequences);
+            if (!isConsistent(symbols, codes, lengths, decodeTable, sequences)) {
+                throw new IOException(filename + " is corrupt.");
+            }
+            return new CodebookCache(freqTable, codes, lengths,
+                new HuffmanCodebook(symbols, codes, lengths), decodeTable, sequences,
+                readString(data));
+        } catch (RuntimeException e) {
+            throw new IOException(filename + " is corrupt.");
+        }
+    }
+
+    /**
+     * This method checks, without building the tree, that the codes form a complete prefix
+     * code that the decode table decodes, and that there is a sequence byte for each node of
+     * the tree they give, so that the tree can be rebuilt later if it is printed.
+     * @param symbols       The symbol of each entry.
+     * @param codes         The code of each entry.
+     * @param lengths       The code length of each entry.
+     * @param decodeTable   The decode table.
+     * @param sequences     The sequence bytes.
+     * @return              True if the cache is consistent.
+     */
+    private static boolean isConsistent(char[] symbols, int[] codes, int[] lengths,
+        HuffmanDecodeTable decodeTable, byte[] sequences) {
+        int maxLength = decodeTable.getMaxLength();
+        int coded = 0;
+        long kraft = 0;
+        for (int i = 0; i < symbols.length; i++) {
+            if (lengths[i] == 0) {
+                continue;
+            } else if (lengths[i] > maxLength) {
+                return false;
+            }
+            int entry = decodeTable.lookup(
+                (codes[i] & 0xFFFFFFFFL) << (maxLength - lengths[i]));
+            if (HuffmanDecodeTable.symbolOf(entry) != symbols[i]
+                || HuffmanDecodeTable.lengthOf(entry) != lengths[i]) {
+                return false;
+            }
+            kraft += 1L << (HuffmanDecodeTable.MAX_CODE_LENGTH - lengths[i]);
+            coded++;
+        }
+        if (coded > 0 && kraft != 1L << HuffmanDecodeTable.MAX_CODE_LENGTH) {
+            return false;
+        }
+
+        // A complete code of n leaves has 2n - 1 nodes; a lone symbol has no code
+        if (sequences.length != Math.max(1, 2 * coded - 1)) {
+            return false;
+        }
+        for (byte kind : sequences) {
+            if (kind != NO_SEQUENCE && kind != IN_ORDER && kind != RIGHT_FIRST) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method writes a compiled codebook to a cache file, replacing any existing cache. The
+     * cache is written to a temporary file in the same directory and then moved into place.
+     * @param filename      The name of the cache file.
+     * @param key           The key of the frequency table and options.
+     * @param freqTable     The frequency table, with codes assigned.
+     * @param huffmanTree   The root node of the Huffman tree.
+     * @param decodeTable   The decode table built from the codes.
+     * @param summary       The code length limit summary, which may be empty.
+     * @throws IOException  If the cache cannot be written.
+     */
+    public static void save(String filename, long key, FreqTreeNode[] freqTable,
+        FreqTreeNode huffmanTree, HuffmanDecodeTable decodeTable, CharSequence summary)
+        throws IOException {
+
+        // Only the entries that are in use are kept
+        int entries = 0;
+        for (FreqTreeNode node : freqTable) {
+            if (node != null) {
+                entries++;
+            }
+        }
+
+        ByteArrayOutputStream sequences = new ByteArrayOutputStream();
+        writeSequences(sequences, huffmanTree);
+
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(),
+            target.getFileName().toString(), ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeLong(key);
+                out.writeInt(entries);
+                for (FreqTreeNode node : freqTable) {
+                    if (node != null) {
+                        String code = node.getHuffmanCode();
+                        out.writeChar(node.getCharacter());
+                        out.writeInt(node.getFrequency());
+                        out.writeInt(code.isEmpty() ? 0 : (int) Long.parseLong(code, 2));
+                        out.writeByte(code.length());
+                    }
+                }
+                decodeTable.write(out);
+                out.writeInt(sequences.size());
+                sequences.writeTo(out);
+                writeString(out, summary.toString());
+            } finally {
+                out.close();
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Getter method for the frequency table.
+     * @return      The frequency table, with codes assigned.
+     */
+    public FreqTreeNode[] getFreqTable() {
+        return this.freqTable;
+    }
+
+    /**
+     * Getter method for the compiled codes.
+     * @return      The codebook, compiled from the cached codes.
+     */
+    public HuffmanCodebook getCodebook() {
+        return this.codebook;
+    }
+
+    /**
+     * Getter method for the decode table.
+     * @return      The decode table, as it was cached.
+     */
+    public HuffmanDecodeTable getDecodeTable() {
+        return this.decodeTable;
+    }
+
+    /**
+     * Getter method for the Huffman tree, which is rebuilt from the codes the first time it is
+     * asked for.
+     * @return      The root node of the tree; its leaves are the frequency table's nodes.
+     */
+    public FreqTreeNode getHuffmanTree() {
+        if (huffmanTree == null) {
+            huffmanTree = CodeLengths.buildTree(freqTable, codes, lengths);
+            setSequences(huffmanTree, sequences, new int[1]);
+        }
+        return this.huffmanTree;
+    }
+
+    /**
+     * Getter method for the code length limit summary.
+     * @return      The summary, which is empty if no limit was applied.
+     */
+    public String getSummary() {
+        return this.summary;
+    }
+
+    /**
+     * This method writes the sequence byte of each node of a subtree, in preorder. Every
+     * internal node's frequency must be the sum of its children's, and its sequence, if it has
+     * one, must be made of theirs.
+     * @param out       The stream receiving the bytes.
+     * @param node      The root of the subtree.
+     * @throws IOException If the subtree cannot be rebuilt from its codes.
+     */
+    private static void writeSequences(ByteArrayOutputStream out, FreqTreeNode node)
+        throws IOException {
+        String sequence = node.getHuffmanSequence();
+        if (node.getLeft() == null && node.getRight() == null) {
+            if (sequence == null) {
+                out.write(NO_SEQUENCE);
+            } else if (sequence.equals(String.valueOf(node.getCharacter()))) {
+                out.write(IN_ORDER);
+            } else {
+                throw new IOException("Tree leaf " + sequence + " cannot be cached.");
+            }
+            return;
+        }
+
+        FreqTreeNode left = node.getLeft();
+        FreqTreeNode right = node.getRight();
+        if (left == null || right == null
+            || node.getFrequency() != left.getFrequency() + right.getFrequency()) {
+            throw new IOException("Tree node " + sequence + " cannot be cached.");
+        }
+        if (sequence == null) {
+            out.write(NO_SEQUENCE);
+        } else if (sequence.equals(left.getHuffmanSequence() + right.getHuffmanSequence())) {
+            out.write(IN_ORDER);
+        } else if (sequence.equals(right.getHuffmanSequence() + left.getHuffmanSequence())) {
+            out.write(RIGHT_FIRST);
+        } else {
+            throw new IOException("Tree node " + sequence + " cannot be cached.");
+        }
+        writeSequences(out, left);
+        writeSequences(out, right);
+    }
+
+    /**
+     * This method gives the nodes of a rebuilt subtree the sequences written by
+     * writeSequences(), children before their parent.
+     * @param node          The root of the subtree.
+     * @param sequences     The sequence byte of each node, in preorder.
+     * @param next          The index of the next sequence byte, which is updated.
+     */
+    private static void setSequences(FreqTreeNode node, byte[] sequences, int[] next) {
+        byte kind = sequences[next[0]++];
+        if (node.getLeft() == null && node.getRight() == null) {
+            node.setHuffmanSequence(kind == NO_SEQUENCE
+                ? null : String.valueOf(node.getCharacter()));
+            return;
+        }
+
+        setSequences(node.getLeft(), sequences, next);
+        setSequences(node.getRight(), sequences, next);
+        String left = node.getLeft().getHuffmanSequence();
+        String right = node.getRight().getHuffmanSequence();
+        if (kind == NO_SEQUENCE) {
+            node.setHuffmanSequence(null);
+        } else if (kind == RIGHT_FIRST) {
+            node.setHuffmanSequence(right + left);
+        } else {
+            node.setHuffmanSequence(left + right);
+        }
+    }
+
+    /**
+     * This method writes a string as its length and characters.
+     * @param out           The stream to which the cache is written.
+     * @param str           The string, or null.
+     * @throws IOException  If the cache cannot be written.
+     */
+    private static void writeString(DataOutputStream out, String str)
+        throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(str.length());
+        out.writeChars(str);
+    }
+
+    /**
+     * This method reads a string written by writeString().
+     * @param data      The cache contents, positioned at the string.
+     * @return          The string, or null.
+     */
+    private static String readString(ByteBuffer data) {
+        int length = data.getInt();
+        if (length < 0) {
+            return null;
+        }
+        char[] chars = new char[length];
+        data.asCharBuffer().get(chars);
+        data.position(data.position() + 2 * length);
+        return new String(chars);
+    }
+
+    /**
+     * This method renders a code as '0'/'1' characters.
+     * @param code      The code, right-aligned.
+     * @param length    The number of bits in the code.
+     * @return          The code as a String.
+     */
+    private static String toBits(int code, int length) {
+        char[] bits = new char[length];
+        for (int i = 0; i < length; i++) {
+            bits[i] = (char) ('0' + ((code >>> (length - 1 - i)) & 1));
+        }
+        return new String(bits);
+    }
+}
@@ -0,0 +1,286 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class serves encode and decode requests with codes that are compiled once, so that many
+ * small jobs can share one warm JVM instead of each paying for startup and a tree rebuild.
+ * Requests are read as lines of Windows-1252 text, either from a pair of streams such as stdin
+ * and stdout or from connections to a port on the loopback address. Each request is handled on
+ * a shared pool of threads, so its response may overtake those of earlier requests; a response
+ * carries the id of its request.
+ *
+ * A request is a line of the form "id command payload", where the id is any word chosen by the
+ * client and the command is one of:
+ *   encode   the payload is clear text, normalized as the clear text file is; a letter with no
+ *            code fails the request
+ *   decode   the payload is '0'/'1' characters
+ * In both, a phrase separator (0xA0) in the payload separates phrases, which are coded one by
+ * one and separated in the same way in the result.
+ *   phrase   the payload is the index, from 0, of a phrase of the open archive, if there is one
+ * The response is a line "id ok result", or "id error message" if the request failed.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class CodecServer {
+
+    /**
+     * Most requests of one client that may be in progress at once; reading stops until one of
+     * them is answered.
+     */
+    static final int MAX_PENDING = 1024;
+
+    private final HuffmanCodebook codebook;
+    private final HuffmanDecodeTable decodeTable;
+    private final SeekableHuffmanFile archive;
+    private final HuffmanDecodeTable archiveTable;
+    private final TokenAlphabet archiveTokens;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Constructor for the server.
+     * @param codebook      The compiled Huffman codes; it is only read, so it is shared.
+     * @param decodeTable   The decode table; it is only read, so it is shared.
+     * @param threads       The number of threads on which requests are handled.
+     */
+    public CodecServer(HuffmanCodebook codebook, HuffmanDecodeTable decodeTable,
+        int threads) {
+        this(codebook, decodeTable, null, null, null, threads);
+    }
+
+    /**
+     * Constructor for a server that also looks up phrases of an archive.
+     * @param codebook      The compiled Huffman codes; it is only read, so it is shared.
+     * @param decodeTable   The decode table; it is only read, so it is shared.
+     * @param archive       The open archive, or null for none; it may be read by several
+     * threads.
+     * @param archiveTable  The decode table for the archive's phrases.
+     * @param archiveTokens The tokens of the archive's phrases, or null if they are letters.
+     * @param threads       The number of threads on which requests are handled.
+     */
+    public CodecServer(HuffmanCodebook codebook, HuffmanDecodeTable decodeTable,
+        SeekableHuffmanFile archive, HuffmanDecodeTable archiveTable,
+        TokenAlphabet archiveTokens, int threads) {
+        this.codebook = codebook;
+        this.decodeTable = decodeTable;
+        this.archive = archive;
+        this.archiveTable = archiveTable;
+        this.archiveTokens = archiveTokens;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    }
+
+    /**
+     * This method answers the requests of one client until its input ends, then waits for the
+     * requests still in progress to be answered. The streams are not closed.
+     * @param in            The stream from which requests are read.
+     * @param out           The stream to which responses are written.
+     * @throws IOException  If either stream fails.
+     */
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(in, HuffmanStream.CHARSET));
+        final Writer writer = new BufferedWriter(
+            new OutputStreamWriter(out, HuffmanStream.CHARSET));
+        final Semaphore pending = new Semaphore(MAX_PENDING);
+        final AtomicReference<IOException> writeError = new AtomicReference<IOException>();
+
+        String line;
+        while ((line = reader.readLine()) != null && writeError.get() == null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            final String request = line;
+            pending.acquireUninterruptibly();
+            requests.incrementAndGet();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String response = handle(request);
+                    try {
+                        synchronized (writer) {
+                            writer.write(response);
+                            writer.write('\n');
+                            writer.flush();
+                        }
+                    } catch (IOException ioExc) {
+                        writeError.compareAndSet(null, ioExc);
+                    } finally {
+                        pending.release();
+                    }
+                }
+            });
+        }
+
+        // Wait until every request has been answered
+        pending.acquireUninterruptibly(MAX_PENDING);
+        if (writeError.get() != null) {
+            throw writeError.get();
+        }
+    }
+
+    /**
+     * This method accepts clients on a port of the loopback address and serves each one on a
+     * thread of its own. It returns only if the server socket fails.
+     * @param port          The port to listen on.
+     * @throws IOException  If the port cannot be opened.
+     */
+    public void listen(int port) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(port, 50,
+            InetAddress.getLoopbackAddress());
+        try {
+            while (true) {
+                final Socket socket = serverSocket.accept();
+                Thread client = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            serve(socket.getInputStream(), socket.getOutputStream());
+                        } catch (IOException ioExc) {
+                            // The client went away; nothing more to send it
+                        } finally {
+                            try {
+                                socket.close();
+                            } catch (IOException ioExc) {
+                                // Already closed
+                            }
+                        }
+                    }
+                });
+                client.setDaemon(true);
+                client.start();
+            }
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    /**
+     * This method handles one request.
+     * @param request   The request line.
+     * @return          The response line.
+     */
+    public String handle(String request) {
+        int idEnd = request.indexOf(' ');
+        if (idEnd < 0) {
+            return request + " error Request has no command.";
+        }
+        String id = request.substring(0, idEnd);
+        int commandEnd = request.indexOf(' ', idEnd + 1);
+        if (commandEnd < 0) {
+            commandEnd = request.length();
+        }
+        String command = request.substring(idEnd + 1, commandEnd);
+        String payload = commandEnd < request.length()
+            ? request.substring(commandEnd + 1) : "";
+
+        try {
+            if (command.equals("encode")) {
+                return encoded(id, payload);
+            } else if (command.equals("decode")) {
+                return decoded(id, payload);
+            } else if (command.equals("phrase") && archive != null) {
+                String decoded = archive.decodePhrase(Integer.parseInt(payload.trim()),
+                    archiveTable).toString();
+                if (isDecodeError(decoded)) {
+                    return id + " error " + decoded;
+                }
+                return id + " ok " + (archiveTokens != null
+                    ? archiveTokens.expand(decoded) : decoded);
+            }
+            return id + " error Unknown command " + command + ".";
+        } catch (IOException ioExc) {
+            return id + " error " + ioExc;
+        } catch (RuntimeException rtExc) {
+            return id + " error " + rtExc;
+        }
+    }
+
+    /**
+     * This method normalizes clear text as the clear text file is normalized, and encodes each
+     * of its phrases.
+     * @param id        The id of the request.
+     * @param clear     The clear text.
+     * @return          The response line.
+     */
+    private String encoded(String id, String clear) {
+        StringBuilder response = new StringBuilder(id).append(" ok ");
+        StringBuilder phrase = new StringBuilder(clear.length());
+        for (int i = 0; i < clear.length(); i++) {
+            int entry = ClearTextNormalizer.entryOf(clear.charAt(i));
+            if (entry == ClearTextNormalizer.SEPARATOR) {
+                codebook.encode(phrase, response);
+                response.append(HuffmanStream.PHRASE_SEPARATOR);
+                phrase.setLength(0);
+            } else if (entry != ClearTextNormalizer.REMOVED) {
+                for (; entry != 0; entry >>>= 16) {
+                    char letter = (char) entry;
+                    if (codebook.getLength(letter) == 0) {
+                        return id + " error No code for '" + letter + "'.";
+                    }
+                    phrase.append(letter);
+                }
+            }
+        }
+        codebook.encode(phrase, response);
+        return response.toString();
+    }
+
+    /**
+     * This method decodes each phrase of '0'/'1' characters.
+     * @param id        The id of the request.
+     * @param coded     The encoded phrases.
+     * @return          The response line, which is an error if any phrase cannot be decoded.
+     */
+    private String decoded(String id, String coded) {
+        StringBuilder response = new StringBuilder(id).append(" ok ");
+        int start = 0;
+        while (true) {
+            int end = coded.indexOf(HuffmanStream.PHRASE_SEPARATOR, start);
+            String decoded = Lab3.decodeHuffman(decodeTable,
+                coded.substring(start, end < 0 ? coded.length() : end)).toString();
+            if (isDecodeError(decoded)) {
+                return id + " error " + decoded;
+            }
+            response.append(decoded);
+            if (end < 0) {
+                return response.toString();
+            }
+            response.append(HuffmanStream.PHRASE_SEPARATOR);
+            start = end + 1;
+        }
+    }
+
+    /**
+     * This method checks whether a decoded phrase is one of the decode error messages.
+     * @param decoded   The decoded phrase.
+     * @return          True if the phrase could not be decoded.
+     */
+    private static boolean isDecodeError(String decoded) {
+        return decoded.equals(Lab3.DECODE_ERROR)
+            || decoded.equals(Lab3.UNSPECIFIED_DECODE_ERROR);
+    }
+
+    /**
+     * Getter method for the number of requests read.
+     * @return      The number of requests read from all clients.
+     */
+    public long getRequestCount() {
+        return this.requests.get();
+    }
+
+    /**
+     * This method stops the threads that handle requests, once the requests in progress are
+     * done.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,352 @@
+import java.util.Arrays;
+
+/**
+ * This class is a Huffman tree held in parallel primitive arrays instead of FreqTreeNode
+ * objects. Node i has a frequency, a symbol and two child indexes; the leaves take slots 0 to
+ * getLeafCount() - 1 in order of frequency, and the merged nodes follow in the order they were
+ * formed, so every node's children have lower indexes than it and the root is the last node.
+ * A node costs about 20 bytes and no Strings, and walks of the tree read the arrays in order.
+ *
+ * The tree is built after a single sort, using the two-queue method, and takes nodes in the
+ * same order as the priority queue of Lab3.buildHuffmanTree(), so both give the same codes.
+ * Codes can be assigned to the frequency table and a decode table built straight from the
+ * arrays; a FreqTreeNode tree is only made when one is asked for, such as for printing.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class CompactHuffmanTree {
+
+    private final int leafCount;
+    private final int[] left;
+    private final int[] right;
+    private final long[] freq;
+    private final char[] symbol;
+    private final int[] tableIndex;
+
+    /**
+     * Constructor for a tree whose arrays have been filled in.
+     * @param leafCount     The number of leaves.
+     * @param left          The left child of each node, or -1 for a leaf.
+     * @param right         The right child of each node, or -1 for a leaf.
+     * @param freq          The frequency of each node.
+     * @param symbol        The symbol of each leaf.
+     * @param tableIndex    The frequency table index of each leaf.
+     */
+    private CompactHuffmanTree(int leafCount, int[] left, int[] right, long[] freq,
+        char[] symbol, int[] tableIndex) {
+        this.leafCount = leafCount;
+        this.left = left;
+        this.right = right;
+        this.freq = freq;
+        this.symbol = symbol;
+        this.tableIndex = tableIndex;
+    }
+
+    /**
+     * Builds the Huffman tree using the two-queue method: the leaves, sorted in the order of
+     * FreqTreeNode.compareTo(), form one queue, and the merged nodes form a second queue that
+     * is created in frequency order. The smallest node is at the front of the leaf queue or,
+     * among the merged nodes of the lowest frequency, the one FreqTreeNode.compare() puts first,
+     * which is moved to the front before it is taken. This takes linear time unless many merged
+     * nodes share a frequency. Children are placed left or right by the same rules as
+     * Lab3.breakTies().
+     *
+     * @param freqTable     The frequency table; null entries are skipped.
+     * @return              The tree.
+     */
+    public static CompactHuffmanTree build(FreqTreeNode[] freqTable) {
+
+        // Sort the leaves by frequency, then by their order in the table
+        int leafCount = 0;
+        for (FreqTreeNode node : freqTable) {
+            if (node != null) {
+                leafCount++;
+            }
+        }
+        long[] keys = new long[leafCount];
+        int k = 0;
+        for (int i = 0; i < freqTable.length; i++) {
+            if (freqTable[i] != null) {
+                keys[k++] = ((long) freqTable[i].getFrequency() << 32) | i;
+            }
+        }
+        Arrays.sort(keys);
+
+        // Leaves of equal frequency are then taken in order of their characters
+        for (int start = 0, end; start < leafCount; start = end) {
+            end = start + 1;
+            while (end < leafCount && keys[end] >>> 32 == keys[start] >>> 32) {
+                end++;
+            }
+            if (end - start > 1) {
+                long[] byCharacter = new long[end - start];
+                for (int i = start; i < end; i++) {
+                    int index = (int) keys[i];
+                    byCharacter[i - start] =
+                        ((long) freqTable[index].getCharacter() << 32) | index;
+                }
+                Arrays.sort(byCharacter);
+                for (int i = start; i < end; i++) {
+                    keys[i] = (keys[i] & 0xFFFFFFFF00000000L)
+                        | (byCharacter[i - start] & 0xFFFFFFFFL);
+                }
+            }
+        }
+
+        // Leaves take slots 0 to leafCount - 1; merged nodes follow
+        int nodeCount = Math.max(2 * leafCount - 1, 0);
+        long[] freq = new long[nodeCount];
+        int[] size = new int[nodeCount];
+        char[] first = new char[nodeCount];
+        char[] symbol = new char[nodeCount];
+        int[] left = new int[nodeCount];
+        int[] right = new int[nodeCount];
+        int[] tableIndex = new int[leafCount];
+        for (int i = 0; i < leafCount; i++) {
+            tableIndex[i] = (int) keys[i];
+            freq[i] = freqTable[tableIndex[i]].getFrequency();
+            size[i] = 1;
+            symbol[i] = freqTable[tableIndex[i]].getCharacter();
+            first[i] = symbol[i];
+            left[i] = -1;
+            right[i] = -1;
+        }
+
+        int nextLeaf = 0;
+        int nextMerged = leafCount;
+        for (int merged = leafCount; merged < nodeCount; merged++) {
+
+            // Take the two smallest nodes from the fronts of the queues
+            int smallest;
+            int secondSmallest;
+            moveSmallestMerged(nextMerged, merged, freq, size, first, left, right);
+            if (nextLeaf < leafCount && (nextMerged >= merged
+                || FreqTreeNode.compare(freq[nextLeaf], 1, first[nextLeaf],
+                freq[nextMerged], size[nextMerged], first[nextMerged]) < 0)) {
+                smallest = nextLeaf++;
+            } else {
+                smallest = nextMerged++;
+            }
+            moveSmallestMerged(nextMerged, merged, freq, size, first, left, right);
+            if (nextLeaf < leafCount && (nextMerged >= merged
+                || FreqTreeNode.compare(freq[nextLeaf], 1, first[nextLeaf],
+                freq[nextMerged], size[nextMerged], first[nextMerged]) < 0)) {
+                secondSmallest = nextLeaf++;
+            } else {
+                secondSmallest = nextMerged++;
+            }
+
+            // A merged node's sequence starts with that of the node taken first
+            freq[merged] = freq[smallest] + freq[secondSmallest];
+            size[merged] = size[smallest] + size[secondSmallest];
+            first[merged] = first[smallest];
+
+            // Apply the tie-breaking rules of breakTies()
+            boolean swap;
+            if (freq[smallest] != freq[secondSmallest]) {
+                swap = false;
+            } else if (size[smallest] != size[secondSmallest]) {
+                swap = size[smallest] > size[secondSmallest];
+            } else {
+                swap = !(symbol[smallest] < symbol[secondSmallest]);
+            }
+            left[merged] = swap ? secondSmallest : smallest;
+            right[merged] = swap ? smallest : secondSmallest;
+        }
+
+        return new CompactHuffmanTree(leafCount, left, right, freq, symbol, tableIndex);
+    }
+
+    /**
+     * This method moves the merged node that FreqTreeNode.compare() puts first, among those at
+     * the front of the merged queue that share its frequency, to the front. No node has been
+     * given any of them as a child yet, so they may be reordered.
+     * @param front     The index of the front of the merged queue.
+     * @param end       The index after the last merged node formed so far.
+     * @param freq      The frequency of each node.
+     * @param size      The number of leaves under each node.
+     * @param first     The first character of each node's sequence.
+     * @param left      The left child of each node.
+     * @param right     The right child of each node.
+     */
+    private static void moveSmallestMerged(int front, int end, long[] freq, int[] size,
+        char[] first, int[] left, int[] right) {
+        int best = front;
+        for (int i = front + 1; i < end && freq[i] == freq[front]; i++) {
+            if (FreqTreeNode.compare(freq[i], size[i], first[i], freq[best], size[best],
+                first[best]) < 0) {
+                best = i;
+            }
+        }
+        if (best != front) {
+            long f = freq[best];
+            freq[best] = freq[front];
+            freq[front] = f;
+            int s = size[best];
+            size[best] = size[front];
+            size[front] = s;
+            char c = first[best];
+            first[best] = first[front];
+            first[front] = c;
+            int l = left[best];
+            left[best] = left[front];
+            left[front] = l;
+            int r = right[best];
+            right[best] = right[front];
+            right[front] = r;
+        }
+    }
+
+    /**
+     * Getter method for the number of nodes.
+     * @return      The number of leaves and merged nodes.
+     */
+    public int getNodeCount() {
+        return this.freq.length;
+    }
+
+    /**
+     * Getter method for the number of leaves.
+     * @return      The number of symbols in the tree.
+     */
+    public int getLeafCount() {
+        return this.leafCount;
+    }
+
+    /**
+     * Getter method for the root.
+     * @return      The index of the root node, or -1 if the tree is empty.
+     */
+    public int getRoot() {
+        return this.freq.length - 1;
+    }
+
+    /**
+     * This method tests whether a node is a leaf.
+     * @param node      The index of the node.
+     * @return          True if the node has no children.
+     */
+    public boolean isLeaf(int node) {
+        return node < this.leafCount;
+    }
+
+    /**
+     * Getter method for the left child of a node.
+     * @param node      The index of the node.
+     * @return          The index of the left child, or -1 for a leaf.
+     */
+    public int getLeft(int node) {
+        return this.left[node];
+    }
+
+    /**
+     * Getter method for the right child of a node.
+     * @param node      The index of the node.
+     * @return          The index of the right child, or -1 for a leaf.
+     */
+    public int getRight(int node) {
+        return this.right[node];
+    }
+
+    /**
+     * Getter method for the frequency of a node.
+     * @param node      The index of the node.
+     * @return          The frequency of the node's subtree.
+     */
+    public long getFrequency(int node) {
+        return this.freq[node];
+    }
+
+    /**
+     * Getter method for the symbol of a leaf.
+     * @param node      The index of the leaf.
+     * @return          The leaf's character.
+     */
+    public char getSymbol(int node) {
+        return this.symbol[node];
+    }
+
+    /**
+     * This method assigns the tree's codes to the frequency table it was built from.
+     * @param freqTable     The frequency table.
+     */
+    public void assignCodes(FreqTreeNode[] freqTable) {
+        long[] codes = new long[getNodeCount()];
+        int[] lengths = new int[getNodeCount()];
+        leafCodes(codes, lengths);
+
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            char[] bits = new char[lengths[leaf]];
+            for (int bit = 0; bit < bits.length; bit++) {
+                bits[bit] = (char) ('0' + ((codes[leaf] >>> (bits.length - 1 - bit)) & 1));
+            }
+            freqTable[tableIndex[leaf]].setHuffmanCode(new String(bits));
+        }
+    }
+
+    /**
+     * This method builds a decode table straight from the arrays.
+     * @return          The table for decoding the tree's codes.
+     * @throws IllegalStateException If a code is longer than the table can hold.
+     */
+    public HuffmanDecodeTable toDecodeTable() {
+        long[] codes = new long[getNodeCount()];
+        int[] lengths = new int[getNodeCount()];
+        leafCodes(codes, lengths);
+
+        int[] leafCodes = new int[leafCount];
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            if (lengths[leaf] > HuffmanDecodeTable.MAX_CODE_LENGTH) {
+                throw new IllegalStateException("Huffman code of " + lengths[leaf]
+                    + " bits exceeds the " + HuffmanDecodeTable.MAX_CODE_LENGTH
+                    + "-bit table limit.");
+            }
+            leafCodes[leaf] = (int) codes[leaf];
+        }
+        return new HuffmanDecodeTable(Arrays.copyOf(symbol, leafCount), leafCodes,
+            Arrays.copyOf(lengths, leafCount));
+    }
+
+    /**
+     * This method makes a FreqTreeNode view of the tree. The leaves are the frequency table's
+     * own nodes, as when the tree is built from nodes.
+     * @param freqTable     The frequency table the tree was built from.
+     * @return              The root node of the view, or null if the tree is empty.
+     */
+    public FreqTreeNode toNodes(FreqTreeNode[] freqTable) {
+        FreqTreeNode[] nodes = new FreqTreeNode[getNodeCount()];
+        for (int i = 0; i < nodes.length; i++) {
+            if (i < leafCount) {
+                nodes[i] = freqTable[tableIndex[i]];
+                if (nodes[i].getHuffmanSequence() == null) {
+                    nodes[i].setHuffmanSequence(
+                        String.valueOf(nodes[i].getCharacter()));
+                }
+            } else {
+                nodes[i] = new FreqTreeNode();
+                nodes[i].setFrequency((int) freq[i]);
+                nodes[i].setLeft(nodes[left[i]]);
+                nodes[i].setRight(nodes[right[i]]);
+                nodes[left[i]].setParent(nodes[i]);
+                nodes[right[i]].setParent(nodes[i]);
+            }
+        }
+        return nodes.length == 0 ? null : nodes[nodes.length - 1];
+    }
+
+    /**
+     * This method works out the code of every leaf. Since parents come after their children,
+     * one pass from the root down reaches each parent before its children.
+     * @param codes     Array receiving the code of each node, right-aligned.
+     * @param lengths   Array receiving the code length of each node.
+     */
+    private void leafCodes(long[] codes, int[] lengths) {
+        for (int node = getRoot(); node >= leafCount; node--) {
+            codes[left[node]] = codes[node] << 1;
+            codes[right[node]] = (codes[node] << 1) | 1;
+            lengths[left[node]] = lengths[node] + 1;
+            lengths[right[node]] = lengths[node] + 1;
+        }
+    }
+}
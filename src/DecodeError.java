@@ -0,0 +1,90 @@
+/**
+ * This class records one place at which a phrase could not be decoded: the phrase, the bit at
+ * which the trouble starts, and the reason. Phrases count from 0, as they do in an archive
+ * request, and bit offsets count from the start of the phrase; in a textual phrase they count
+ * only the '0'/'1' characters.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class DecodeError {
+
+    /**
+     * The next bits match no code.
+     */
+    static final String INVALID_CODE = "no code matches the next bits";
+
+    /**
+     * The phrase or chunk ends part way through a code.
+     */
+    static final String TRUNCATED_CODE = "ends part way through a code";
+
+    /**
+     * A textual phrase holds a character other than '0' or '1'.
+     */
+    static final String INVALID_CHARACTER = "not a binary character";
+
+    /**
+     * A chunk decodes to a different number of symbols than its checkpoint gives.
+     */
+    static final String WRONG_SYMBOL_COUNT = "wrong number of symbols before the checkpoint";
+
+    /**
+     * A chunk's offset lies outside its phrase, or before the chunk that comes ahead of it.
+     */
+    static final String INVALID_CHECKPOINT = "chunk offset outside the phrase";
+
+    /**
+     * A chunk's selector names a table that the file does not have.
+     */
+    static final String INVALID_SELECTOR = "selector names a missing table";
+
+    private final int phrase;
+    private final long bitOffset;
+    private final String reason;
+
+    /**
+     * Constructor for an error record.
+     * @param phrase        The index of the phrase.
+     * @param bitOffset     The bit of the phrase at which the error starts.
+     * @param reason        Why the bits could not be decoded.
+     */
+    public DecodeError(int phrase, long bitOffset, String reason) {
+        this.phrase = phrase;
+        this.bitOffset = bitOffset;
+        this.reason = reason;
+    }
+
+    /**
+     * Getter method for the phrase.
+     * @return      The index of the phrase.
+     */
+    public int getPhrase() {
+        return this.phrase;
+    }
+
+    /**
+     * Getter method for the bit offset.
+     * @return      The bit of the phrase at which the error starts.
+     */
+    public long getBitOffset() {
+        return this.bitOffset;
+    }
+
+    /**
+     * Getter method for the reason.
+     * @return      Why the bits could not be decoded.
+     */
+    public String getReason() {
+        return this.reason;
+    }
+
+    /**
+     * This method describes the error for the report.
+     * @return      The phrase, bit offset and reason as one line.
+     */
+    @Override
+    public String toString() {
+        return "Phrase " + phrase + ", bit " + bitOffset + ": " + reason + ".";
+    }
+}
@@ -0,0 +1,242 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class holds a non-decreasing sequence of longs in the Elias-Fano encoding, which takes
+ * about 2 + log2(u / n) bits per value for n values no greater than u, and still gives any
+ * value by its index in constant time. Each value is split into its low bits, which are stored
+ * as they are in a packed array, and its high bits, which are stored in unary: value i sets bit
+ * (high + i) of a bit vector. Finding value i means finding the i-th set bit of that vector;
+ * the position of every SAMPLE_RATE-th set bit is kept so that only a few words are scanned.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class EliasFanoSequence {
+
+    /**
+     * Number of set bits between the kept positions.
+     */
+    static final int SAMPLE_RATE = 256;
+
+    private final int count;
+    private final int lowBits;
+    private final long[] low;
+    private final long[] high;
+    private final long[] samples;
+
+    /**
+     * Constructor for a sequence whose words have been filled in.
+     * @param count     The number of values.
+     * @param lowBits   The number of low bits stored for each value.
+     * @param low       The packed low bits.
+     * @param high      The unary high bits.
+     */
+    private EliasFanoSequence(int count, int lowBits, long[] low, long[] high) {
+        this.count = count;
+        this.lowBits = lowBits;
+        this.low = low;
+        this.high = high;
+
+        // Keep the position of every SAMPLE_RATE-th set bit
+        this.samples = new long[(count + SAMPLE_RATE - 1) / SAMPLE_RATE];
+        int ones = 0;
+        for (int word = 0; word < high.length; word++) {
+            long bits = high[word];
+            while (bits != 0) {
+                if (ones % SAMPLE_RATE == 0) {
+                    samples[ones / SAMPLE_RATE] =
+                        ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+                }
+                ones++;
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * This method encodes a sequence.
+     * @param values    The values, in non-decreasing order and not negative.
+     * @return          The encoded sequence.
+     * @throws IllegalArgumentException If the values are out of order or negative.
+     */
+    public static EliasFanoSequence encode(long[] values) {
+        int count = values.length;
+        long universe = count == 0 ? 0 : values[count - 1];
+        int lowBits = 0;
+        while (count > 0 && (universe / count) >> (lowBits + 1) > 0) {
+            lowBits++;
+        }
+
+        long[] low = new long[(int) (((long) count * lowBits + 63) >>> 6)];
+        long[] high = new long[(int) ((count + (universe >>> lowBits) + 64) >>> 6)];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            if (values[i] < previous) {
+                throw new IllegalArgumentException("Values must not decrease.");
+            }
+            previous = values[i];
+            setBits(low, (long) i * lowBits, lowBits, values[i]);
+            long position = (values[i] >>> lowBits) + i;
+            high[(int) (position >>> 6)] |= 1L << position;
+        }
+        return new EliasFanoSequence(count, lowBits, low, high);
+    }
+
+    /**
+     * This method reads a sequence written by write(). The words are checked to be exactly those
+     * that write() gives for the values they hold, and the values to be in order, so that get()
+     * cannot read past the words or return a value smaller than the one before it.
+     * @param buffer        The buffer, positioned at the sequence; it is moved past it.
+     * @return              The sequence.
+     * @throws IOException  If the sequence is malformed.
+     */
+    public static EliasFanoSequence read(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 13) {
+            throw new IOException("Offset index is truncated.");
+        }
+        int count = buffer.getInt();
+        int lowBits = buffer.get();
+        int lowWords = buffer.getInt();
+        int highWords = buffer.getInt();
+        if (count < 0 || lowBits < 0 || lowBits > 62 || highWords < 0
+            || lowWords != (((long) count * lowBits + 63) >>> 6)
+            || buffer.remaining() < 8L * (lowWords + (long) highWords)) {
+            throw new IOException("Offset index is malformed.");
+        }
+
+        long[] low = new long[lowWords];
+        long[] high = new long[highWords];
+        for (int i = 0; i < lowWords; i++) {
+            low[i] = buffer.getLong();
+        }
+        for (int i = 0; i < highWords; i++) {
+            high[i] = buffer.getLong();
+        }
+
+        // Walk the values in order, as get() would find them
+        long previous = 0;
+        long top = 0;
+        int index = 0;
+        for (int word = 0; word < highWords; word++) {
+            long bits = high[word];
+            while (bits != 0) {
+                long position = ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+                if (index == count || position - index > Long.MAX_VALUE >>> lowBits) {
+                    throw new IOException("Offset index is malformed.");
+                }
+                long value = ((position - index) << lowBits)
+                    | getBits(low, (long) index * lowBits, lowBits);
+                if (value < previous) {
+                    throw new IOException("Offset index is out of order.");
+                }
+                previous = value;
+                top = position + 1;
+                index++;
+                bits &= bits - 1;
+            }
+        }
+
+        // The high bits end one word after the last set bit, as encode() leaves them
+        if (index != count || highWords != (top + 64) >>> 6) {
+            throw new IOException("Offset index is malformed.");
+        }
+        return new EliasFanoSequence(count, lowBits, low, high);
+    }
+
+    /**
+     * This method writes the sequence.
+     * @param out           The stream to which the sequence is written.
+     * @throws IOException  If the stream fails.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(count);
+        out.writeByte(lowBits);
+        out.writeInt(low.length);
+        out.writeInt(high.length);
+        for (long word : low) {
+            out.writeLong(word);
+        }
+        for (long word : high) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Getter method for the number of values.
+     * @return      The number of values in the sequence.
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * Getter method for a value.
+     * @param index     The index of the value.
+     * @return          The value.
+     * @throws IndexOutOfBoundsException If there is no such value.
+     */
+    public long get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("No value " + index + " in a sequence of "
+                + count + ".");
+        }
+
+        // Start from the nearest kept position and count set bits up to the one wanted
+        long position = samples[index / SAMPLE_RATE];
+        int word = (int) (position >>> 6);
+        long bits = high[word] & (-1L << position);
+        int skip = index % SAMPLE_RATE;
+        while (Long.bitCount(bits) <= skip) {
+            skip -= Long.bitCount(bits);
+            bits = high[++word];
+        }
+        for (int i = 0; i < skip; i++) {
+            bits &= bits - 1;
+        }
+        position = ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+
+        return ((position - index) << lowBits) | getBits(low, (long) index * lowBits, lowBits);
+    }
+
+    /**
+     * This method stores a field of bits in a packed array.
+     * @param words     The packed array.
+     * @param start     The bit at which the field starts.
+     * @param width     The number of bits in the field, up to 62.
+     * @param value     The value, of which the low width bits are stored.
+     */
+    private static void setBits(long[] words, long start, int width, long value) {
+        if (width == 0) {
+            return;
+        }
+        value &= (1L << width) - 1;
+        int word = (int) (start >>> 6);
+        int shift = (int) (start & 63);
+        words[word] |= value << shift;
+        if (shift + width > 64) {
+            words[word + 1] |= value >>> (64 - shift);
+        }
+    }
+
+    /**
+     * This method reads a field of bits from a packed array.
+     * @param words     The packed array.
+     * @param start     The bit at which the field starts.
+     * @param width     The number of bits in the field, up to 62.
+     * @return          The value of the field.
+     */
+    private static long getBits(long[] words, long start, int width) {
+        if (width == 0) {
+            return 0;
+        }
+        int word = (int) (start >>> 6);
+        int shift = (int) (start & 63);
+        long value = words[word] >>> shift;
+        if (shift + width > 64) {
+            value |= words[word + 1] << (64 - shift);
+        }
+        return value & ((1L << width) - 1);
+    }
+}
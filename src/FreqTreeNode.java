@@ -14,6 +14,7 @@ public class FreqTreeNode implements Comparable<FreqTreeNode> {
   private FreqTreeNode parent = null;
   private String huffmanSequence;
   private String huffmanCode = "";
+  private int order = 0;
 
     /**
      * This is the constructor for a Huffman tree node, when a string is passed
@@ -114,6 +115,23 @@ public class FreqTreeNode implements Comparable<FreqTreeNode> {
         this.parent = parent;
     }
 
+    /**
+     * Getter method for the node's number in an adaptive tree, where nodes are numbered from
+     * the root down in order of decreasing frequency.
+     * @return      The number of the node.
+     */
+    public int getOrder() {
+        return this.order;
+    }
+
+    /**
+     * Setter method for the node's number in an adaptive tree.
+     * @param order     The number of the node.
+     */
+    public void setOrder(int order) {
+        this.order = order;
+    }
+
     /**
      * Setter method for the Huffman character sequence.
      * @param sequence      This is the string of chars that the Huffman tree will use.
@@ -123,10 +141,14 @@ public class FreqTreeNode implements Comparable<FreqTreeNode> {
     }
 
     /**
-     * Getter method for the Huffman character sequence.
+     * Getter method for the Huffman character sequence. An internal node that was built without
+     * a sequence derives it from its children each time it is asked for.
      * @return String of characters that denotes the Huffman sequence.
      */
     public String getHuffmanSequence() {
+        if (this.huffmanSequence == null && this.left != null && this.right != null) {
+            return this.left.getHuffmanSequence() + this.right.getHuffmanSequence();
+        }
         return this.huffmanSequence;
     }
 
@@ -148,7 +170,9 @@ public class FreqTreeNode implements Comparable<FreqTreeNode> {
 
     /**
      * This method overrides the default compareTo() method in the priority queue so the custom
-     * fields can be used as the priority queue ordering.
+     * fields can be used as the priority queue ordering. Nodes are ordered by frequency, then
+     * by the length of their letter sequence, then by its first letter, so no two nodes in the
+     * queue are equal and the tree does not depend on how the queue breaks ties.
      * @param node      The node to which this node is being compared.
      * @return          Integer values indicating the results of the comparison.
      */
@@ -156,7 +180,47 @@ public class FreqTreeNode implements Comparable<FreqTreeNode> {
     public int compareTo(FreqTreeNode node) {
 
       // Compare this node to the one passed in
-      return Integer.compare(this.getFrequency(), node.getFrequency());
+      return compare(this.getFrequency(), this.getSequenceLength(), this.getFirstCharacter(),
+          node.getFrequency(), node.getSequenceLength(), node.getFirstCharacter());
+    }
+
+    /**
+     * This method compares two nodes in the order of compareTo(), so that a builder that keeps
+     * its nodes in arrays, such as CompactHuffmanTree, takes them in the same order.
+     * @param frequency         The frequency of the first node.
+     * @param length            The length of the first node's letter sequence.
+     * @param first             The first letter of the first node's sequence.
+     * @param otherFrequency    The frequency of the second node.
+     * @param otherLength       The length of the second node's letter sequence.
+     * @param otherFirst        The first letter of the second node's sequence.
+     * @return                  Negative, zero or positive as the first node comes before, with
+     * or after the second.
+     */
+    static int compare(long frequency, int length, char first, long otherFrequency,
+        int otherLength, char otherFirst) {
+      if (frequency != otherFrequency) {
+        return Long.compare(frequency, otherFrequency);
+      } else if (length != otherLength) {
+        return Integer.compare(length, otherLength);
+      }
+      return Character.compare(first, otherFirst);
+    }
+
+    /**
+     * Getter method for the length of the letter sequence.
+     * @return      The number of letters under the node; 1 for a leaf.
+     */
+    int getSequenceLength() {
+      return this.huffmanSequence == null ? 1 : this.huffmanSequence.length();
+    }
+
+    /**
+     * Getter method for the first letter of the letter sequence.
+     * @return      The leaf's character, or the first letter of a merged node's sequence.
+     */
+    char getFirstCharacter() {
+      return this.huffmanSequence == null || this.huffmanSequence.isEmpty()
+          ? this.character : this.huffmanSequence.charAt(0);
     }
 
   /**
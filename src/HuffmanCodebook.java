@@ -0,0 +1,158 @@
+/**
+ * This class is the compiled form of the Huffman codes, used for encoding. The code bits and
+ * code length of each symbol are stored in primitive arrays indexed directly by the character,
+ * so encoding a symbol takes two array reads instead of a search of the frequency table.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class HuffmanCodebook {
+
+    private final int[] code;
+    private final byte[] length;
+
+    /**
+     * Constructor that compiles the codes from the frequency table. The Huffman codes must
+     * already have been assigned to the table's nodes.
+     * @param freqTable     The frequency table.
+     */
+    public HuffmanCodebook(FreqTreeNode[] freqTable) {
+
+        // Size the arrays to cover the largest character in the table
+        int maxChar = 0;
+        for (FreqTreeNode node : freqTable) {
+            if (node != null) {
+                maxChar = Math.max(maxChar, node.getCharacter());
+            }
+        }
+        this.code = new int[maxChar + 1];
+        this.length = new byte[maxChar + 1];
+
+        for (FreqTreeNode node : freqTable) {
+            if (node == null) {
+                continue;
+            }
+            String huffmanCode = node.getHuffmanCode();
+            if (huffmanCode.length() > HuffmanDecodeTable.MAX_CODE_LENGTH) {
+                throw new IllegalStateException("Huffman code for "
+                    + node.getCharacter() + " is longer than "
+                    + HuffmanDecodeTable.MAX_CODE_LENGTH + " bits.");
+            }
+            if (!huffmanCode.isEmpty()) {
+                code[node.getCharacter()] = (int) Long.parseLong(huffmanCode, 2);
+                length[node.getCharacter()] = (byte) huffmanCode.length();
+            }
+        }
+    }
+
+    /**
+     * Constructor that compiles the codes from arrays of codes, such as those kept in a
+     * codebook cache.
+     * @param symbols   The symbol of each code.
+     * @param codes     The bits of each code, right-aligned.
+     * @param lengths   The length of each code; entries of length 0 have no code.
+     */
+    public HuffmanCodebook(char[] symbols, int[] codes, int[] lengths) {
+        int maxChar = 0;
+        for (char symbol : symbols) {
+            maxChar = Math.max(maxChar, symbol);
+        }
+        this.code = new int[maxChar + 1];
+        this.length = new byte[maxChar + 1];
+
+        for (int i = 0; i < symbols.length; i++) {
+            if (lengths[i] > HuffmanDecodeTable.MAX_CODE_LENGTH) {
+                throw new IllegalStateException("Huffman code for " + symbols[i]
+                    + " is longer than " + HuffmanDecodeTable.MAX_CODE_LENGTH + " bits.");
+            }
+            code[symbols[i]] = codes[i];
+            length[symbols[i]] = (byte) lengths[i];
+        }
+    }
+
+    /**
+     * Getter method for the code bits of a symbol.
+     * @param symbol    The character to be looked up.
+     * @return          The code, right-aligned.
+     */
+    public int getCode(char symbol) {
+        return symbol < code.length ? code[symbol] : 0;
+    }
+
+    /**
+     * Getter method for the code length of a symbol.
+     * @param symbol    The character to be looked up.
+     * @return          The number of bits in the code, or 0 if the symbol has no code.
+     */
+    public int getLength(char symbol) {
+        return symbol < length.length ? length[symbol] : 0;
+    }
+
+    /**
+     * This method counts the bits that part of a text encodes to, without encoding it.
+     * @param clear     The clear text.
+     * @param start     Index of the first character to count.
+     * @param end       Index one past the last character to count.
+     * @return          The number of bits the codes take.
+     */
+    public long getBitLength(CharSequence clear, int start, int end) {
+        byte[] length = this.length;
+        long bits = 0;
+        for (int i = start; i < end; i++) {
+            char c = clear.charAt(i);
+            if (c < length.length) {
+                bits += length[c];
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * This method encodes text as packed bits. Characters without a code are skipped.
+     * @param clear     The clear text to be encoded.
+     * @param writer    The BitWriter to which the codes are appended.
+     */
+    public void encode(CharSequence clear, BitWriter writer) {
+        encode(clear, 0, clear.length(), writer);
+    }
+
+    /**
+     * This method encodes part of a text as packed bits. Characters without a code are skipped.
+     * @param clear     The clear text to be encoded.
+     * @param start     Index of the first character to encode.
+     * @param end       Index one past the last character to encode.
+     * @param writer    The BitWriter to which the codes are appended.
+     * @return          The number of symbols encoded.
+     */
+    public int encode(CharSequence clear, int start, int end, BitWriter writer) {
+        int[] code = this.code;
+        byte[] length = this.length;
+        int symbols = 0;
+        for (int i = start; i < end; i++) {
+            char c = clear.charAt(i);
+            if (c < length.length && length[c] != 0) {
+                writer.writeBits(code[c], length[c]);
+                symbols++;
+            }
+        }
+        return symbols;
+    }
+
+    /**
+     * This method encodes text as '0'/'1' characters. Characters without a code are skipped.
+     * @param clear     The clear text to be encoded.
+     * @param encoded   The StringBuilder to which the codes are appended.
+     */
+    public void encode(CharSequence clear, StringBuilder encoded) {
+        int[] code = this.code;
+        byte[] length = this.length;
+        for (int i = 0; i < clear.length(); i++) {
+            char c = clear.charAt(i);
+            if (c < length.length) {
+                for (int bit = length[c] - 1; bit >= 0; bit--) {
+                    encoded.append((char) ('0' + ((code[c] >>> bit) & 1)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,419 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class is a multi-level lookup table used to decode Huffman codes without walking the
+ * tree one bit at a time. The first level is indexed by the next PRIMARY_BITS bits of input;
+ * codes that are longer than that are resolved by a block for their prefix, indexed by as many
+ * of the following bits as the longest code under that prefix needs, up to PRIMARY_BITS again.
+ * Codes that are longer still go on to a further block in the same way, so the table grows with
+ * the number of codes rather than with two to the power of the longest one. Each entry packs the
+ * decoded symbol and its code length into a single int; an entry that points at a block is
+ * negative and packs the block's start and width instead. A built table can be written out and
+ * read back as it is, so that a cache need not build it again.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class HuffmanDecodeTable {
+
+    /**
+     * Number of bits resolved by the first-level table, and most resolved by any other block.
+     */
+    static final int PRIMARY_BITS = 8;
+
+    /**
+     * Longest code the table can hold; codes are stored in an int.
+     */
+    static final int MAX_CODE_LENGTH = 32;
+
+    /**
+     * Most entries the table may hold, which keeps a very large alphabet from taking an
+     * unbounded amount of memory.
+     */
+    static final int MAX_TABLE_ENTRIES = 1 << 22;
+
+    /**
+     * Number of low bits of a block pointer that hold the block's width.
+     */
+    private static final int WIDTH_BITS = 4;
+
+    private final int maxLength;
+    private final int primaryBits;
+    private final int[] table;
+
+    /**
+     * Constructor that builds the lookup tables from the root of a Huffman tree.
+     * @param root      The root node of the Huffman tree.
+     */
+    public HuffmanDecodeTable(FreqTreeNode root) {
+        this(collectLeaves(root));
+    }
+
+    /**
+     * Constructor that builds the lookup tables from a list of codes, such as canonical codes
+     * derived from code lengths.
+     * @param symbols   The symbol of each code.
+     * @param codes     The bits of each code, right-aligned.
+     * @param lengths   The length of each code; entries of length 0 are skipped.
+     * @throws IllegalStateException If a code is too long, or the table would be too large.
+     */
+    public HuffmanDecodeTable(char[] symbols, int[] codes, int[] lengths) {
+        int leafCount = symbols.length;
+
+        int longest = 0;
+        for (int i = 0; i < leafCount; i++) {
+            longest = Math.max(longest, lengths[i]);
+        }
+        if (longest > MAX_CODE_LENGTH) {
+            throw new IllegalStateException("Huffman code of " + longest
+                + " bits exceeds the " + MAX_CODE_LENGTH + "-bit table limit.");
+        }
+
+        this.maxLength = longest;
+        this.primaryBits = Math.min(PRIMARY_BITS, longest);
+
+        // Sort the codes by their bits, so that the codes under any prefix are side by side
+        long[] keys = new long[leafCount];
+        int codeCount = 0;
+        for (int i = 0; i < leafCount; i++) {
+            if (lengths[i] > 0) { // A single-leaf tree has no code to decode
+                long aligned = (codes[i] & 0xFFFFFFFFL) << (MAX_CODE_LENGTH - lengths[i]);
+                keys[codeCount++] = (aligned << 20) | i;
+            }
+        }
+        Arrays.sort(keys, 0, codeCount);
+        int[] order = new int[codeCount];
+        for (int i = 0; i < codeCount; i++) {
+            order[i] = (int) (keys[i] & ((1 << 20) - 1));
+        }
+
+        Blocks blocks = new Blocks(symbols, codes, lengths, 1 << primaryBits);
+        blocks.fill(0, primaryBits, 0, order, 0, codeCount);
+        this.table = Arrays.copyOf(blocks.entries, blocks.size);
+    }
+
+    /**
+     * Constructor for a table whose entries have been read.
+     * @param maxLength     The length of the longest code.
+     * @param table         The entries.
+     */
+    private HuffmanDecodeTable(int maxLength, int[] table) {
+        this.maxLength = maxLength;
+        this.primaryBits = Math.min(PRIMARY_BITS, maxLength);
+        this.table = table;
+    }
+
+    /**
+     * This method reads a table written by write(). Every block pointer is checked to point at a
+     * later block that lies within the table, and every code to be no longer than the longest,
+     * so that lookup() cannot loop or read past the entries.
+     * @param buffer        The buffer, positioned at the table; it is moved past it.
+     * @return              The table.
+     * @throws IOException  If the table is malformed.
+     */
+    public static HuffmanDecodeTable read(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 5) {
+            throw new IOException("Decode table is truncated.");
+        }
+        int maxLength = buffer.get();
+        int size = buffer.getInt();
+        if (maxLength < 0 || maxLength > MAX_CODE_LENGTH
+            || size < 1 << Math.min(PRIMARY_BITS, maxLength) || size > MAX_TABLE_ENTRIES
+            || buffer.remaining() < 4L * size) {
+            throw new IOException("Decode table is malformed.");
+        }
+        int[] table = new int[size];
+        buffer.asIntBuffer().get(table);
+        buffer.position(buffer.position() + 4 * size);
+
+        for (int i = 0; i < size; i++) {
+            int entry = table[i];
+            if (entry < 0) {
+                int block = ~entry;
+                int width = block & ((1 << WIDTH_BITS) - 1);
+                long start = block >>> WIDTH_BITS;
+                if (width < 1 || width > PRIMARY_BITS || start <= i
+                    || start + (1 << width) > size) {
+                    throw new IOException("Decode table is malformed.");
+                }
+            } else if (lengthOf(entry) > maxLength) {
+                throw new IOException("Decode table is malformed.");
+            }
+        }
+        return new HuffmanDecodeTable(maxLength, table);
+    }
+
+    /**
+     * This method writes the table's entries as they are.
+     * @param out           The stream to which the table is written.
+     * @throws IOException  If the stream fails.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(maxLength);
+        out.writeInt(table.length);
+        for (int entry : table) {
+            out.writeInt(entry);
+        }
+    }
+
+    /**
+     * Getter method for the length of the longest code in the table.
+     * @return      The number of bits that must be passed to lookup().
+     */
+    public int getMaxLength() {
+        return this.maxLength;
+    }
+
+    /**
+     * This method looks up the code at the front of a window of input bits.
+     * @param window    The next getMaxLength() bits of input, right-aligned, with the first
+     * bit as the most significant. Missing bits at the end of the input should be zero.
+     * @return          The packed table entry, or 0 if no code matches.
+     */
+    public int lookup(long window) {
+        int consumed = primaryBits;
+        int entry = table[(int) (window >>> (maxLength - consumed))];
+        while (entry < 0) {
+            int block = ~entry;
+            int width = block & ((1 << WIDTH_BITS) - 1);
+            consumed += width;
+            entry = table[(block >>> WIDTH_BITS)
+                + ((int) (window >>> (maxLength - consumed)) & ((1 << width) - 1))];
+        }
+        return entry;
+    }
+
+    /**
+     * This method decodes every code left in a packed bit stream into an array.
+     * @param reader    The reader over the encoded bits.
+     * @param decoded   The array receiving the decoded symbols.
+     * @param offset    The index at which the first symbol is stored.
+     * @param limit     The index past which no symbol may be stored.
+     * @return          The number of symbols decoded, or -1 if the stream ends part way
+     * through a code or holds more symbols than fit.
+     */
+    public int decode(BitReader reader, char[] decoded, int offset, int limit) {
+        int index = offset;
+
+        while (reader.getBitsRemaining() > 0) {
+            int entry = lookup(reader.peekBits(maxLength));
+            int codeLen = lengthOf(entry);
+            if (codeLen == 0 || codeLen > reader.getBitsRemaining()
+                || index >= limit) {
+                return -1;
+            }
+            reader.skipBits(codeLen);
+            decoded[index++] = symbolOf(entry);
+        }
+
+        return index - offset;
+    }
+
+    /**
+     * Extracts the decoded symbol from a table entry.
+     * @param entry     An entry returned by lookup().
+     * @return          The decoded symbol.
+     */
+    public static char symbolOf(int entry) {
+        return (char) (entry >>> 8);
+    }
+
+    /**
+     * Extracts the code length from a table entry.
+     * @param entry     An entry returned by lookup().
+     * @return          The number of bits the symbol's code uses, or 0 for no match.
+     */
+    public static int lengthOf(int entry) {
+        return entry & 0xFF;
+    }
+
+    /**
+     * Constructor for the codes collected from a tree.
+     * @param leaves    The symbols, codes and lengths of the leaves.
+     */
+    private HuffmanDecodeTable(Leaves leaves) {
+        this(leaves.symbols, leaves.codes, leaves.lengths);
+    }
+
+    /**
+     * This class lays out the blocks of the table while it is built.
+     */
+    private static class Blocks {
+
+        private final char[] symbols;
+        private final int[] codes;
+        private final int[] lengths;
+        private int[] entries;
+        private int size;
+
+        /**
+         * Constructor for a table holding only the first-level block.
+         * @param symbols       The symbol of each code.
+         * @param codes         The bits of each code, right-aligned.
+         * @param lengths       The length of each code.
+         * @param primarySize   The number of entries in the first-level block.
+         */
+        Blocks(char[] symbols, int[] codes, int[] lengths, int primarySize) {
+            this.symbols = symbols;
+            this.codes = codes;
+            this.lengths = lengths;
+            this.entries = new int[primarySize];
+            this.size = primarySize;
+        }
+
+        /**
+         * This method fills in a block, adding a further block for each of its entries that
+         * leads to codes too long to resolve within it.
+         * @param start     The index of the block's first entry.
+         * @param width     The number of bits the block resolves.
+         * @param consumed  The number of bits resolved before the block.
+         * @param order     The index of each code, sorted by the bits of the code.
+         * @param from      The first code in order under the block's prefix.
+         * @param to        The index in order past the last code under the block's prefix.
+         * @throws IllegalStateException If the table would be too large.
+         */
+        void fill(int start, int width, int consumed, int[] order, int from, int to) {
+            int resolved = consumed + width;
+            int i = from;
+            while (i < to) {
+                int code = order[i];
+
+                // A code that ends within the block fills every entry it is a prefix of
+                if (lengths[code] <= resolved) {
+                    int entry = (symbols[code] << 8) | lengths[code];
+                    int shift = resolved - lengths[code];
+                    int suffix = (int) (codes[code] & ((1L << (lengths[code] - consumed)) - 1));
+                    int first = start + (suffix << shift);
+                    Arrays.fill(entries, first, first + (1 << shift), entry);
+                    i++;
+                    continue;
+                }
+
+                // Longer codes with the same bits here share a further block, just wide
+                // enough for the longest of them
+                int slot = slotOf(code, consumed, width);
+                int end = i;
+                int longest = 0;
+                while (end < to && lengths[order[end]] > resolved
+                    && slotOf(order[end], consumed, width) == slot) {
+                    longest = Math.max(longest, lengths[order[end]]);
+                    end++;
+                }
+                int childWidth = Math.min(PRIMARY_BITS, longest - resolved);
+                int childStart = allocate(1 << childWidth);
+                entries[start + slot] = ~((childStart << WIDTH_BITS) | childWidth);
+                fill(childStart, childWidth, resolved, order, i, end);
+                i = end;
+            }
+        }
+
+        /**
+         * This method finds the entry of a block that a code longer than the block falls in.
+         * @param code      The index of the code.
+         * @param consumed  The number of bits resolved before the block.
+         * @param width     The number of bits the block resolves.
+         * @return          The index of the entry within the block.
+         */
+        private int slotOf(int code, int consumed, int width) {
+            return (codes[code] >>> (lengths[code] - consumed - width)) & ((1 << width) - 1);
+        }
+
+        /**
+         * This method adds a block of empty entries to the end of the table.
+         * @param count     The number of entries in the block.
+         * @return          The index of the block's first entry.
+         * @throws IllegalStateException If the table would be too large.
+         */
+        private int allocate(int count) {
+            long newSize = (long) size + count;
+            if (newSize > MAX_TABLE_ENTRIES) {
+                throw new IllegalStateException("Huffman decode table exceeds the "
+                    + MAX_TABLE_ENTRIES + "-entry limit; use -maxCodeLength to shorten "
+                    + "the codes.");
+            }
+            if (newSize > entries.length) {
+                entries = Arrays.copyOf(entries, (int) Math.min(MAX_TABLE_ENTRIES,
+                    Math.max(newSize, 2L * entries.length)));
+            }
+            int blockStart = size;
+            size = (int) newSize;
+            return blockStart;
+        }
+    }
+
+    /**
+     * This method collects the symbol, code and length of each leaf of the Huffman tree.
+     * @param root      The root node of the Huffman tree.
+     * @return          The symbols, codes and lengths of the leaves.
+     */
+    private static Leaves collectLeaves(FreqTreeNode root) {
+        Leaves leaves = new Leaves(countLeaves(root));
+        collectLeaves(root, 0, 0, leaves.symbols, leaves.codes, leaves.lengths, 0);
+        return leaves;
+    }
+
+    /**
+     * This class holds the codes collected from the leaves of a tree.
+     */
+    private static class Leaves {
+
+        private final char[] symbols;
+        private final int[] codes;
+        private final int[] lengths;
+
+        /**
+         * Constructor for empty arrays of codes.
+         * @param count     The number of leaves.
+         */
+        Leaves(int count) {
+            this.symbols = new char[count];
+            this.codes = new int[count];
+            this.lengths = new int[count];
+        }
+    }
+
+    /**
+     * This method counts the leaves under a node of the Huffman tree.
+     * @param node      The node at which counting starts.
+     * @return          The number of leaves.
+     */
+    private static int countLeaves(FreqTreeNode node) {
+        if (node.getLeft() == null && node.getRight() == null) {
+            return 1;
+        }
+        return countLeaves(node.getLeft()) + countLeaves(node.getRight());
+    }
+
+    /**
+     * This method traverses the Huffman tree and records the code of each leaf, building the
+     * code as an int rather than as a String.
+     * @param node      The current node.
+     * @param code      The bits of the path taken to reach the node.
+     * @param length    The depth of the node.
+     * @param symbols   Array receiving the leaf characters.
+     * @param codes     Array receiving the leaf codes.
+     * @param lengths   Array receiving the leaf code lengths.
+     * @param index     The next free index in the arrays.
+     * @return          The next free index after this subtree.
+     */
+    private static int collectLeaves(FreqTreeNode node, int code, int length,
+        char[] symbols, int[] codes, int[] lengths, int index) {
+
+        // Record the leaf; base case
+        if (node.getLeft() == null && node.getRight() == null) {
+            symbols[index] = node.getCharacter();
+            codes[index] = code;
+            lengths[index] = length;
+            return index + 1;
+        }
+
+        // Go to the left child, then the right child
+        index = collectLeaves(node.getLeft(), code << 1, length + 1, symbols,
+            codes, lengths, index);
+        return collectLeaves(node.getRight(), (code << 1) | 1, length + 1,
+            symbols, codes, lengths, index);
+    }
+}
@@ -0,0 +1,427 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * This class encodes and decodes files as streams, passing fixed-size buffers from an input
+ * channel through the codec to an output channel. Memory use does not depend on the size of the
+ * input, and output is written as soon as each buffer fills.
+ *
+ * Both directions use the same layout as the text files: one phrase per line, with each phrase
+ * ended by a non-breaking space (0xA0 in Windows-1252). Either static codes or adaptive codes
+ * may be used; with adaptive codes the phrases share one model, so they are coded in order.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class HuffmanStream {
+
+    static final int BUFFER_SIZE = 1 << 16;
+    static final long MAP_WINDOW_SIZE = 1L << 28;
+    static final Charset CHARSET = Charset.forName("windows-1252");
+    static final char PHRASE_SEPARATOR = '\u00A0';
+
+    /**
+     * This method streams clear text from one channel to another as '0'/'1' Huffman codes.
+     * Punctuation and whitespace are removed and letters are upper-cased, as when the clear
+     * text is imported.
+     *
+     * @param in            The channel containing the clear text.
+     * @param out           The channel to which the encoded text is written.
+     * @param codebook      The compiled Huffman codes.
+     * @throws IOException  If either channel fails.
+     */
+    public static void encode(ReadableByteChannel in, WritableByteChannel out,
+        HuffmanCodebook codebook) throws IOException {
+        encode(in, out, codebook, null);
+    }
+
+    /**
+     * This method streams clear text from one channel to another as '0'/'1' adaptive Huffman
+     * codes, in a single pass with no frequency table. The clear text is normalized as in
+     * encode().
+     *
+     * @param in            The channel containing the clear text.
+     * @param out           The channel to which the encoded text is written.
+     * @param coder         The adaptive coder, which is updated as each symbol is coded.
+     * @throws IOException  If either channel fails.
+     */
+    public static void encode(ReadableByteChannel in, WritableByteChannel out,
+        AdaptiveHuffmanCoder coder) throws IOException {
+        encode(in, out, null, coder);
+    }
+
+    /**
+     * This method streams clear text from one channel to another with either kind of code.
+     *
+     * @param in            The channel containing the clear text.
+     * @param out           The channel to which the encoded text is written.
+     * @param codebook      The compiled Huffman codes, or null to use the adaptive coder.
+     * @param coder         The adaptive coder, or null to use the codebook.
+     * @throws IOException  If either channel fails.
+     */
+    private static void encode(ReadableByteChannel in, final WritableByteChannel out,
+        final HuffmanCodebook codebook, final AdaptiveHuffmanCoder coder) throws IOException {
+        final ByteBuffer outBytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+        // Code each symbol as soon as the normalizer reads it
+        ClearTextNormalizer.normalize(in, new ClearTextNormalizer.Sink() {
+            @Override
+            public void symbol(char c) throws IOException {
+                encodeSymbol(c, codebook, coder, outBytes, out);
+            }
+
+            @Override
+            public void separator() throws IOException {
+                if (outBytes.remaining() < 2) {
+                    drain(outBytes, out);
+                }
+                outBytes.put((byte) 0xA0);
+                outBytes.put((byte) '\n');
+            }
+        });
+
+        drain(outBytes, out);
+    }
+
+    /**
+     * This method writes the code of one normalized symbol as '0'/'1' characters.
+     *
+     * @param c             The symbol.
+     * @param codebook      The compiled Huffman codes, or null to use the adaptive coder.
+     * @param coder         The adaptive coder, or null to use the codebook.
+     * @param outBytes      The buffer to which the code is written.
+     * @param out           The channel to which a full buffer is drained.
+     * @throws IOException  If the channel fails.
+     */
+    private static void encodeSymbol(char c, HuffmanCodebook codebook,
+        AdaptiveHuffmanCoder coder, ByteBuffer outBytes, WritableByteChannel out)
+        throws IOException {
+        if (coder != null) {
+            if (outBytes.remaining() < coder.codeLength(c)) {
+                drain(outBytes, out);
+            }
+            coder.encode(c, outBytes);
+        } else {
+            if (outBytes.remaining() < codebook.getLength(c)) {
+                drain(outBytes, out);
+            }
+            int code = codebook.getCode(c);
+            for (int bit = codebook.getLength(c) - 1; bit >= 0; bit--) {
+                outBytes.put((byte) ('0' + ((code >>> bit) & 1)));
+            }
+        }
+    }
+
+    /**
+     * This method streams '0'/'1' Huffman codes from one channel to another as clear text.
+     * Codes may span buffer boundaries. When a phrase holds a character other than '0', '1' or
+     * a line ending, or ends part way through a code, the symbols decoded so far are kept and
+     * an error message is written in place of the rest of the phrase.
+     *
+     * @param in            The channel containing the encoded text.
+     * @param out           The channel to which the decoded text is written.
+     * @param table         The decode table built from the Huffman tree.
+     * @throws IOException  If either channel fails.
+     */
+    public static void decode(ReadableByteChannel in, WritableByteChannel out,
+        HuffmanDecodeTable table) throws IOException {
+        decode(in, new TextDecoder(table, null, out));
+    }
+
+    /**
+     * This method streams '0'/'1' adaptive Huffman codes from one channel to another as clear
+     * text. Errors are handled as in decode(), but since the phrases share one model, phrases
+     * after an error will not decode correctly.
+     *
+     * @param in            The channel containing the encoded text.
+     * @param out           The channel to which the decoded text is written.
+     * @param coder         The adaptive coder, which is updated as each symbol is decoded.
+     * @throws IOException  If either channel fails.
+     */
+    public static void decode(ReadableByteChannel in, WritableByteChannel out,
+        AdaptiveHuffmanCoder coder) throws IOException {
+        decode(in, new TextDecoder(null, coder, out));
+    }
+
+    /**
+     * This method feeds a channel through a text decoder a buffer at a time.
+     *
+     * @param in            The channel containing the encoded text.
+     * @param decoder       The decoder.
+     * @throws IOException  If either channel fails.
+     */
+    private static void decode(ReadableByteChannel in, TextDecoder decoder)
+        throws IOException {
+        ByteBuffer inBytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+        while (in.read(inBytes) >= 0) {
+            inBytes.flip();
+            decoder.feed(inBytes);
+            inBytes.clear();
+        }
+        decoder.finish();
+    }
+
+    /**
+     * This method decodes '0'/'1' Huffman codes from a file by memory-mapping it, rather than
+     * reading it into buffers. Large files are mapped one window at a time, and codes may span
+     * the windows. Errors are handled as in decode().
+     *
+     * @param in            The file containing the encoded text.
+     * @param out           The channel to which the decoded text is written.
+     * @param table         The decode table built from the Huffman tree.
+     * @throws IOException  If the file cannot be mapped or the channel fails.
+     */
+    public static void decodeMapped(FileChannel in, WritableByteChannel out,
+        HuffmanDecodeTable table) throws IOException {
+        decodeMapped(in, new TextDecoder(table, null, out));
+    }
+
+    /**
+     * This method decodes '0'/'1' adaptive Huffman codes from a file by memory-mapping it.
+     * Errors are handled as in decode().
+     *
+     * @param in            The file containing the encoded text.
+     * @param out           The channel to which the decoded text is written.
+     * @param coder         The adaptive coder, which is updated as each symbol is decoded.
+     * @throws IOException  If the file cannot be mapped or the channel fails.
+     */
+    public static void decodeMapped(FileChannel in, WritableByteChannel out,
+        AdaptiveHuffmanCoder coder) throws IOException {
+        decodeMapped(in, new TextDecoder(null, coder, out));
+    }
+
+    /**
+     * This method feeds a file through a text decoder a mapped window at a time.
+     *
+     * @param in            The file containing the encoded text.
+     * @param decoder       The decoder.
+     * @throws IOException  If the file cannot be mapped or the channel fails.
+     */
+    private static void decodeMapped(FileChannel in, TextDecoder decoder)
+        throws IOException {
+        long size = in.size();
+
+        for (long position = 0; position < size; position += MAP_WINDOW_SIZE) {
+            decoder.feed(in.map(FileChannel.MapMode.READ_ONLY, position,
+                Math.min(MAP_WINDOW_SIZE, size - position)));
+        }
+        decoder.finish();
+    }
+
+    /**
+     * This class holds the state of a text decode between buffers. Static codes are decoded by
+     * an IncrementalHuffmanDecoder, which keeps the bit window; adaptive codes keep their state
+     * in the coder, and this class tracks whether the current phrase has hit an error. The
+     * current phrase is held back until it ends, so that a phrase that fails is written as its
+     * error message alone, as in the textual decoder.
+     */
+    private static class TextDecoder {
+
+        private final IncrementalHuffmanDecoder decoder;
+        private final AdaptiveHuffmanCoder coder;
+        private final WritableByteChannel out;
+        private CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        private final ByteBuffer outBytes = ByteBuffer.allocate(BUFFER_SIZE * 2);
+        private final CharsetEncoder encoder = CHARSET.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private boolean phraseStarted = false;
+        private boolean skipping = false;
+        private int phraseStart = 0;
+
+        /**
+         * Constructor for the decoder state.
+         * @param table     The decode table, or null to use the adaptive coder.
+         * @param coder     The adaptive coder, or null to use the decode table.
+         * @param out       The channel to which the decoded text is written.
+         */
+        TextDecoder(HuffmanDecodeTable table, AdaptiveHuffmanCoder coder,
+            WritableByteChannel out) {
+            this.decoder = table == null ? null : new IncrementalHuffmanDecoder(table);
+            this.coder = coder;
+            this.out = out;
+        }
+
+        /**
+         * This method decodes every byte remaining in a buffer.
+         * @param inBytes       The encoded bytes.
+         * @throws IOException  If the output channel fails.
+         */
+        void feed(ByteBuffer inBytes) throws IOException {
+            if (decoder != null) {
+                while (true) {
+
+                    // Leave room for an error message and a line ending
+                    if (chars.remaining() <= 64) {
+                        writeCompletePhrases();
+                    }
+                    chars.limit(chars.capacity() - 64);
+                    int status = decoder.feed(inBytes, chars);
+                    chars.limit(chars.capacity());
+                    if (status == IncrementalHuffmanDecoder.NEEDS_INPUT) {
+                        return;
+                    } else if (status == IncrementalHuffmanDecoder.PHRASE_FAILED) {
+                        failPhrase(errorMessage());
+                    } else if (status == IncrementalHuffmanDecoder.PHRASE_COMPLETE) {
+                        chars.put(PHRASE_SEPARATOR).put('\n');
+                        phraseStart = chars.position();
+                    }
+                }
+            }
+
+            while (inBytes.hasRemaining()) {
+
+                // Leave room for an error message and a line ending
+                if (chars.remaining() <= 64) {
+                    writeCompletePhrases();
+                }
+
+                byte b = inBytes.get();
+                if (b == (byte) 0xA0) {
+                    if (!skipping) {
+                        endPhrase();
+                    }
+                    chars.put(PHRASE_SEPARATOR).put('\n');
+                    phraseStart = chars.position();
+                    phraseStarted = false;
+                    skipping = false;
+                } else if (b == '\n' || b == '\r' || skipping) {
+                    continue;
+                } else if (b == '0' || b == '1') {
+                    int symbol = coder.decodeBit(b - '0');
+                    if (symbol != AdaptiveHuffmanCoder.MORE_BITS) {
+                        chars.put((char) symbol);
+                    }
+                    phraseStarted = true;
+                } else {
+                    failPhrase(Lab3.UNSPECIFIED_DECODE_ERROR);
+                    skipping = true;
+                    coder.abandonSymbol();
+                }
+            }
+        }
+
+        /**
+         * This method decodes the last phrase, which has no separator, and writes out
+         * everything that is still buffered.
+         * @throws IOException  If the output channel fails.
+         */
+        void finish() throws IOException {
+            if (decoder != null) {
+                while (true) {
+                    if (chars.remaining() <= 64) {
+                        writeCompletePhrases();
+                    }
+                    chars.limit(chars.capacity() - 64);
+                    int status = decoder.finish(chars);
+                    chars.limit(chars.capacity());
+                    if (status == IncrementalHuffmanDecoder.PHRASE_FAILED) {
+                        failPhrase(errorMessage());
+                    } else if (status != IncrementalHuffmanDecoder.OUTPUT_FULL) {
+                        break;
+                    }
+                }
+            } else if (phraseStarted && !skipping) {
+                endPhrase();
+            }
+            phraseStart = chars.position();
+            writeCompletePhrases();
+        }
+
+        /**
+         * This method writes out the phrases that have ended. The current phrase stays in the
+         * buffer, which grows if the phrase fills it.
+         * @throws IOException  If the output channel fails.
+         */
+        private void writeCompletePhrases() throws IOException {
+            int end = chars.position();
+            chars.flip();
+            chars.limit(phraseStart);
+            while (encoder.encode(chars, outBytes, false).isOverflow()) {
+                drain(outBytes, out);
+            }
+            drain(outBytes, out);
+            phraseStart -= chars.position();
+            chars.limit(end);
+            chars.compact();
+            if (chars.remaining() <= 64) {
+                CharBuffer larger = CharBuffer.allocate(chars.capacity() * 2);
+                chars.flip();
+                chars = larger.put(chars);
+            }
+        }
+
+        /**
+         * This method replaces what has been decoded of the current phrase with an error
+         * message.
+         * @param message   The message for the error.
+         */
+        private void failPhrase(String message) {
+            chars.position(phraseStart);
+            chars.append(message);
+        }
+
+        /**
+         * This method gives the message written in place of a phrase that failed, as in the
+         * textual decoder.
+         * @return      The message for the decoder's error.
+         */
+        private String errorMessage() {
+            return decoder.getError() == DecodeError.INVALID_CHARACTER
+                ? Lab3.UNSPECIFIED_DECODE_ERROR : Lab3.DECODE_ERROR;
+        }
+
+        /**
+         * This method decodes whatever is left of an adaptive phrase when its end is reached.
+         */
+        private void endPhrase() {
+            if (!coder.isBetweenSymbols()) {
+                failPhrase(Lab3.DECODE_ERROR);
+                coder.abandonSymbol();
+            }
+        }
+    }
+
+    /**
+     * This method tests whether a character is dropped when clear text is normalized.
+     * @param c     The character to be tested.
+     * @return      True for punctuation, '|' and whitespace.
+     */
+    static boolean isRemoved(char c) {
+        switch (Character.getType(c)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return true;
+            default:
+                return c == '|' || c == ' ' || (c >= '\t' && c <= '\r');
+        }
+    }
+
+    /**
+     * This method writes everything in the buffer to the channel and clears the buffer.
+     * @param buffer        The buffer to be written.
+     * @param out           The channel to be written to.
+     * @throws IOException  If the channel fails.
+     */
+    private static void drain(ByteBuffer buffer, WritableByteChannel out)
+        throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,196 @@
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * This class decodes '0'/'1' Huffman codes pushed to it in fragments of any size, such as the
+ * buffers of a network read, which need not line up with codes or phrases. The partial code at
+ * the end of one fragment is kept in a bit window until the next one arrives. Phrases are
+ * ended by a non-breaking space (0xA0), as in the encoded text files; line endings are ignored.
+ *
+ * Each call to feed() decodes into a buffer supplied by the caller and returns as soon as there
+ * is something to report: the input is used up, the output is full, or a phrase has failed or
+ * ended. Every phrase ends with one PHRASE_COMPLETE, which may follow one PHRASE_FAILED. The
+ * decoder allocates nothing once it is constructed, so it may be called from an event loop.
+ * One decoder holds the state of one stream; it is not safe to share between threads.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class IncrementalHuffmanDecoder {
+
+    /**
+     * Status when all of the input has been used.
+     */
+    static final int NEEDS_INPUT = 0;
+
+    /**
+     * Status when the output buffer is full; call again once it has been drained.
+     */
+    static final int OUTPUT_FULL = 1;
+
+    /**
+     * Status when a phrase separator has been read and the phrase is fully decoded.
+     */
+    static final int PHRASE_COMPLETE = 2;
+
+    /**
+     * Status when the current phrase cannot be decoded; getError() gives the reason, and the
+     * rest of the phrase is skipped.
+     */
+    static final int PHRASE_FAILED = 3;
+
+    private static final byte SEPARATOR = (byte) 0xA0;
+
+    private final HuffmanDecodeTable table;
+    private final int maxLength;
+    private long window = 0;
+    private int bits = 0;
+    private boolean phraseStarted = false;
+    private boolean skipping = false;
+    private String error = null;
+
+    /**
+     * Constructor for the decoder.
+     * @param table     The decode table built from the Huffman tree.
+     */
+    public IncrementalHuffmanDecoder(HuffmanDecodeTable table) {
+        this.table = table;
+        this.maxLength = table.getMaxLength();
+    }
+
+    /**
+     * This method decodes input until there is something to report.
+     * @param in        The encoded bytes; the position is moved past the bytes used.
+     * @param out       The buffer to which decoded symbols are written.
+     * @return          NEEDS_INPUT, OUTPUT_FULL, PHRASE_COMPLETE or PHRASE_FAILED.
+     */
+    public int feed(ByteBuffer in, CharBuffer out) {
+        while (true) {
+
+            // Decode while the window is sure to hold a whole code
+            if (!skipping && maxLength > 0) {
+                int status = decodeWindow(out, maxLength);
+                if (status != NEEDS_INPUT) {
+                    return status;
+                }
+            }
+            if (!in.hasRemaining()) {
+                return NEEDS_INPUT;
+            }
+
+            byte b = in.get(in.position());
+            if (b == SEPARATOR) {
+                if (!skipping && phraseStarted) {
+                    int status = decodeWindow(out, 1);
+                    if (status != NEEDS_INPUT) {
+                        return status;
+                    }
+                }
+                in.get();
+                startPhrase();
+                return PHRASE_COMPLETE;
+            }
+
+            in.get();
+            if (b == '\n' || b == '\r' || skipping) {
+                continue;
+            }
+            phraseStarted = true;
+            if (b != '0' && b != '1') {
+                return fail(DecodeError.INVALID_CHARACTER);
+            }
+            window = (window << 1) | (b - '0');
+            bits++;
+        }
+    }
+
+    /**
+     * This method ends the input, decoding the last phrase, which has no separator.
+     * @param out       The buffer to which decoded symbols are written.
+     * @return          OUTPUT_FULL or PHRASE_FAILED if the last phrase is not yet done, in
+     * which case finish() should be called again; PHRASE_COMPLETE once it is done; or
+     * NEEDS_INPUT if there was no last phrase.
+     */
+    public int finish(CharBuffer out) {
+        if (!skipping && phraseStarted) {
+            int status = decodeWindow(out, 1);
+            if (status != NEEDS_INPUT) {
+                return status;
+            }
+        }
+        boolean ended = phraseStarted;
+        startPhrase();
+        return ended ? PHRASE_COMPLETE : NEEDS_INPUT;
+    }
+
+    /**
+     * Getter method for the reason the current phrase failed.
+     * @return      One of the DecodeError reasons, or null if the phrase has not failed.
+     */
+    public String getError() {
+        return this.error;
+    }
+
+    /**
+     * This method drops any partial phrase, so that the decoder can start a new stream.
+     */
+    public void reset() {
+        startPhrase();
+    }
+
+    /**
+     * This method decodes codes from the window while it holds at least the given number of
+     * bits. Past the bits it holds, the window reads as zeros.
+     * @param out       The buffer to which decoded symbols are written.
+     * @param minBits   The fewest bits the window must hold to decode another code.
+     * @return          NEEDS_INPUT once the window holds too few bits, or OUTPUT_FULL or
+     * PHRASE_FAILED.
+     */
+    private int decodeWindow(CharBuffer out, int minBits) {
+        while (bits >= minBits && bits > 0) {
+            if (!out.hasRemaining()) {
+                return OUTPUT_FULL;
+            }
+
+            long peek;
+            if (bits >= maxLength) {
+                peek = window >>> (bits - maxLength);
+            } else {
+                peek = window << (maxLength - bits);
+            }
+            int entry = table.lookup(peek & ((1L << maxLength) - 1));
+            int codeLen = HuffmanDecodeTable.lengthOf(entry);
+            if (codeLen == 0) {
+                return fail(DecodeError.INVALID_CODE);
+            } else if (codeLen > bits) {
+                return fail(DecodeError.TRUNCATED_CODE);
+            }
+
+            bits -= codeLen;
+            out.put(HuffmanDecodeTable.symbolOf(entry));
+        }
+        return NEEDS_INPUT;
+    }
+
+    /**
+     * This method marks the current phrase as failed.
+     * @param reason    Why the phrase cannot be decoded.
+     * @return          PHRASE_FAILED.
+     */
+    private int fail(String reason) {
+        skipping = true;
+        error = reason;
+        return PHRASE_FAILED;
+    }
+
+    /**
+     * This method clears the state of the current phrase.
+     */
+    private void startPhrase() {
+        window = 0;
+        bits = 0;
+        phraseStarted = false;
+        skipping = false;
+        error = null;
+    }
+}
@@ -0,0 +1,228 @@
+import java.nio.ByteBuffer;
+
+/**
+ * This class codes each phrase as several bit streams that are decoded side by side, in the
+ * manner of Huff0. A single stream is one long chain of dependent steps, since the length of
+ * each code decides where the next one starts; with STREAMS independent streams, one pass of
+ * the decode loop takes a step in each, and the processor can overlap their table lookups.
+ *
+ * A phrase of at least MIN_SYMBOLS symbols is cut into STREAMS chunks of nearly equal symbol
+ * counts, encoded one after another with the same codebook; shorter phrases are left as one
+ * stream, since the few passes of the loop would not pay for the stream lengths, as in Huff0.
+ * A packed file stores the cut compactly, as the phrase's symbol count and the bit length of
+ * each stream but the last, from which it rebuilds the checkpoint of each stream. Any packed
+ * file with checkpoints can be decoded this way, a group of STREAMS chunks at a time, and the
+ * file can still be decoded one chunk after another by the other decoders.
+ *
+ * In the main loop each stream's only state is its bit position. The next code is found by
+ * reading the eight bytes at that position, so no refill step is needed, and each pass of the
+ * loop is bounded so that no stream can run past its end. The last few codes of each stream are
+ * decoded one at a time.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class InterleavedHuffmanCoder {
+
+    /**
+     * Number of streams decoded together.
+     */
+    static final int STREAMS = 4;
+
+    /**
+     * Fewest symbols in a phrase that is cut into streams.
+     */
+    static final int MIN_SYMBOLS = 256;
+
+    private final HuffmanDecodeTable table;
+
+    /**
+     * Constructor for the decoder.
+     * @param table     The decode table; it is only read, so it may be shared.
+     */
+    public InterleavedHuffmanCoder(HuffmanDecodeTable table) {
+        this.table = table;
+    }
+
+    /**
+     * This method encodes a phrase as STREAMS streams, one after another.
+     * @param codebook          The compiled Huffman codes.
+     * @param phrase            The clear text phrase.
+     * @param chunkOffsets      Array of STREAMS entries receiving the bit offset of each stream.
+     * @param symbolOffsets     Array of STREAMS + 1 entries receiving the number of symbols
+     * before each stream, followed by the total.
+     * @return                  The encoded bits.
+     */
+    public static BitWriter encode(HuffmanCodebook codebook, String phrase, long[] chunkOffsets,
+        long[] symbolOffsets) {
+        BitWriter writer = new BitWriter();
+        long[] starts = streamStarts(phrase.length());
+
+        for (int k = 0; k < STREAMS; k++) {
+            chunkOffsets[k] = writer.getBitLength();
+            symbolOffsets[k] = starts[k];
+            codebook.encode(phrase, (int) starts[k], (int) starts[k + 1], writer);
+        }
+        symbolOffsets[STREAMS] = phrase.length();
+        return writer;
+    }
+
+    /**
+     * This method gives where each stream of a phrase starts, so that a packed file need only
+     * store the phrase's symbol count.
+     * @param symbols   The number of symbols in the phrase.
+     * @return          The number of symbols before each of the STREAMS streams, followed by
+     * the total.
+     */
+    static long[] streamStarts(long symbols) {
+        long[] starts = new long[STREAMS + 1];
+        long streamLength = (symbols + STREAMS - 1) / STREAMS;
+        for (int k = 0; k < STREAMS; k++) {
+            starts[k] = Math.min(symbols, k * streamLength);
+        }
+        starts[STREAMS] = symbols;
+        return starts;
+    }
+
+    /**
+     * This method decodes one phrase of a packed file. Phrases with checkpoints are decoded
+     * STREAMS chunks at a time; others are decoded as one stream.
+     * @param file      The packed file.
+     * @param phrase    The index of the phrase.
+     * @return          The decoded phrase, or an error message if it could not be decoded.
+     */
+    public StringBuilder decode(PackedHuffmanFile file, int phrase) {
+        long[] chunkOffsets = file.getChunkOffsets(phrase);
+        long[] symbolOffsets = file.getSymbolOffsets(phrase);
+        if (symbolOffsets == null) {
+            return Lab3.decodeHuffman(table, file.reader(phrase));
+        } else if (!file.hasValidCheckpoints(phrase)) {
+            return new StringBuilder(Lab3.DECODE_ERROR);
+        }
+
+        ByteBuffer data = file.getBuffer(phrase);
+        int base = file.getByteOffset(phrase);
+        long bitLength = file.getBitLength(phrase);
+        char[] decoded = new char[(int) symbolOffsets[symbolOffsets.length - 1]];
+
+        int chunk = 0;
+        if (table.getMaxLength() > 0) {
+            for (; chunk + STREAMS <= chunkOffsets.length; chunk += STREAMS) {
+                if (!decodeGroup(data, base, chunkOffsets, symbolOffsets, bitLength, chunk,
+                    decoded)) {
+                    return new StringBuilder(Lab3.DECODE_ERROR);
+                }
+            }
+        }
+        for (; chunk < chunkOffsets.length; chunk++) {
+            long end = chunk + 1 < chunkOffsets.length ? chunkOffsets[chunk + 1] : bitLength;
+            if (!finish(data, base, chunkOffsets[chunk], end, decoded,
+                (int) symbolOffsets[chunk], (int) symbolOffsets[chunk + 1])) {
+                return new StringBuilder(Lab3.DECODE_ERROR);
+            }
+        }
+
+        return new StringBuilder(decoded.length).append(decoded);
+    }
+
+    /**
+     * This method decodes STREAMS neighbouring chunks side by side.
+     * @param data              The contents of the packed file.
+     * @param base              The index of the phrase's first byte.
+     * @param chunkOffsets      The bit offset of each chunk of the phrase.
+     * @param symbolOffsets     The symbol offset of each chunk, followed by the total.
+     * @param bitLength         The number of bits in the phrase.
+     * @param first             The first chunk of the group.
+     * @param decoded           The array receiving the phrase's symbols.
+     * @return                  True if every chunk decoded to its checkpoint exactly.
+     */
+    private boolean decodeGroup(ByteBuffer data, int base, long[] chunkOffsets,
+        long[] symbolOffsets, long bitLength, int first, char[] decoded) {
+        int maxLength = table.getMaxLength();
+        int shift = 64 - maxLength;
+
+        // Each stream's bit position and end, and where its symbols go
+        long p0 = chunkOffsets[first];
+        long p1 = chunkOffsets[first + 1];
+        long p2 = chunkOffsets[first + 2];
+        long p3 = chunkOffsets[first + 3];
+        long end0 = p1;
+        long end1 = p2;
+        long end2 = p3;
+        long end3 = first + STREAMS < chunkOffsets.length
+            ? chunkOffsets[first + STREAMS] : bitLength;
+        int o0 = (int) symbolOffsets[first];
+        int o1 = (int) symbolOffsets[first + 1];
+        int o2 = (int) symbolOffsets[first + 2];
+        int o3 = (int) symbolOffsets[first + 3];
+        int limit0 = o1;
+        int limit1 = o2;
+        int limit2 = o3;
+        int limit3 = (int) symbolOffsets[first + STREAMS];
+
+        // Eight bytes can be read at any bit position up to this one
+        long safe = ((long) data.limit() - base - 8) << 3;
+        long safe0 = Math.min(end0, safe);
+        long safe1 = Math.min(end1, safe);
+        long safe2 = Math.min(end2, safe);
+        long safe3 = Math.min(end3, safe);
+
+        while (true) {
+
+            // Take as many steps as no stream can overrun, even with the longest codes
+            int steps = Math.min(Math.min(limit0 - o0, limit1 - o1),
+                Math.min(limit2 - o2, limit3 - o3));
+            steps = (int) Math.min(steps, Math.min(
+                Math.min((safe0 - p0) / maxLength, (safe1 - p1) / maxLength),
+                Math.min((safe2 - p2) / maxLength, (safe3 - p3) / maxLength)));
+            if (steps <= 0) {
+                break;
+            }
+
+            for (int step = 0; step < steps; step++) {
+                int e0 = table.lookup((data.getLong(base + (int) (p0 >>> 3)) << (p0 & 7))
+                    >>> shift);
+                int e1 = table.lookup((data.getLong(base + (int) (p1 >>> 3)) << (p1 & 7))
+                    >>> shift);
+                int e2 = table.lookup((data.getLong(base + (int) (p2 >>> 3)) << (p2 & 7))
+                    >>> shift);
+                int e3 = table.lookup((data.getLong(base + (int) (p3 >>> 3)) << (p3 & 7))
+                    >>> shift);
+                p0 += HuffmanDecodeTable.lengthOf(e0);
+                p1 += HuffmanDecodeTable.lengthOf(e1);
+                p2 += HuffmanDecodeTable.lengthOf(e2);
+                p3 += HuffmanDecodeTable.lengthOf(e3);
+                decoded[o0++] = HuffmanDecodeTable.symbolOf(e0);
+                decoded[o1++] = HuffmanDecodeTable.symbolOf(e1);
+                decoded[o2++] = HuffmanDecodeTable.symbolOf(e2);
+                decoded[o3++] = HuffmanDecodeTable.symbolOf(e3);
+            }
+        }
+
+        // Decode the rest of each stream one code at a time
+        return finish(data, base, p0, end0, decoded, o0, limit0)
+            && finish(data, base, p1, end1, decoded, o1, limit1)
+            && finish(data, base, p2, end2, decoded, o2, limit2)
+            && finish(data, base, p3, end3, decoded, o3, limit3);
+    }
+
+    /**
+     * This method decodes the rest of a stream one code at a time.
+     * @param data      The contents of the packed file.
+     * @param base      The index of the phrase's first byte.
+     * @param fromBit   The bit of the phrase at which the rest of the stream starts.
+     * @param toBit     The bit of the phrase at which the stream ends.
+     * @param decoded   The array receiving the phrase's symbols.
+     * @param offset    The index at which the next symbol is stored.
+     * @param limit     The index at which the stream's symbols end.
+     * @return          True if the stream decoded to exactly its number of symbols.
+     */
+    private boolean finish(ByteBuffer data, int base, long fromBit, long toBit,
+        char[] decoded, int offset, int limit) {
+        if (fromBit > toBit) {
+            return false;
+        }
+        return table.decode(new BitReader(data, base, fromBit, toBit), decoded, offset, limit)
+            == limit - offset;
+    }
+}
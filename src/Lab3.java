@@ -9,20 +9,41 @@
  */
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class Lab3 {
 
+    static final String DECODE_ERROR =
+        "Error reading Huffman code; potential invalid input.";
+    static final String UNSPECIFIED_DECODE_ERROR =
+        "Unspecified error reading Huffman code.";
+    static final int REPORT_BITS = 1 << 16;
+
     /**
      * Main driver methods for the program.
      *
      * @param args          Passed in with runtime arguments; file names for frequency
-     * table, clear text, encoded files, and output file
+     * table, clear text, encoded files, and output file, plus any options
+     * starting with '-'
      */
     public static void main(String[] args) {
 
         String outputFilename = null;
 
+        // Separate the options from the file names
+        Map<String, String> options = new HashMap<String, String>();
+        args = parseOptions(args, options);
+
+        // When serving over stdin, stdout carries nothing but the responses
+        PrintStream responses = System.out;
+        if ("".equals(options.get("serve"))) {
+            System.setOut(System.err);
+        }
+
         // Verify file names are specified
         if (args.length == 4) {
             outputFilename = args[3];
@@ -30,6 +51,10 @@ public class Lab3 {
         } else if (args.length
             == 3) { // Assume the user did not specify an output file name
             outputFilename = "output.txt";
+        } else if (args.length >= 1 && args.length < 3
+            && options.containsKey("serve")) {
+            // Serving needs only the frequency table; no files are written
+            args = Arrays.copyOf(args, 3);
         } else {
             System.out.println(
                 "Error: insufficient runtime arguments. Enter file names for "
@@ -37,79 +62,492 @@ public class Lab3 {
             System.exit(1);
         }
 
-        deletePreviousFile(outputFilename);
+        // Interleaved streams and chunks across threads are two layouts of
+        // the same phrase, so only one of them can be asked for
+        if (options.containsKey("interleave") && (options.containsKey("threads")
+            || options.containsKey("checkpoint"))) {
+            System.out.println("Error: -interleave cannot be used with "
+                + "-threads or -checkpoint. Program exiting.");
+            System.exit(1);
+        }
+
+        if (outputFilename != null) {
+            deletePreviousFile(outputFilename);
+        }
 
         // Load file names into variables
         String freqTableFilename = args[0];
         String clearTextFilename = args[1];
         String encodedTextFilename = args[2];
 
-        // Read in the Frequency table file
-        FreqTreeNode[] freqTable = new FreqTreeNode[26];
-        try {
-            freqTable = importFreqTable(freqTableFilename);
-        } catch (Exception e) {
-            e.printStackTrace();
+        // Time each phase of the run
+        RunMetrics metrics = new RunMetrics();
+        metrics.phase("loadTable");
+
+        // Load the compiled codes from the cache, if it matches the table
+        String cacheFilename = options.get("codebookCache");
+        CodebookCache cache = null;
+        long cacheKey = 0;
+        if (cacheFilename != null && !options.containsKey("fitTable")
+            && !options.containsKey("tokens")) {
+            try {
+                cacheKey = CodebookCache.key(freqTableFilename, options);
+                cache = CodebookCache.load(cacheFilename, cacheKey);
+            } catch (IOException ioExc) {
+                System.out.println("Error reading codebook cache " + ioExc
+                    .getMessage() + " Rebuilding the codes.");
+            }
         }
 
-        // Read in the clear text file
-        StringBuilder clearText = new StringBuilder();
-        try {
-            clearText = importClearText(clearTextFilename);
-        } catch (Exception e) {
-            e.printStackTrace();
+        FreqTreeNode[] freqTable;
+        // Without a FreqTreeNode tree, the compact tree is the tree
+        FreqTreeNode huffmanTree = null;
+        CompactHuffmanTree compactTree = null;
+        StringBuilder lengthLimitSummary = new StringBuilder();
+        TokenAlphabet tokens = null;
+        if (cache != null) {
+            freqTable = cache.getFreqTable();
+            lengthLimitSummary.append(cache.getSummary());
+            System.out.print(lengthLimitSummary);
+        } else {
+            // Read in the Frequency table file, or fit one to the clear text
+            freqTable = new FreqTreeNode[26];
+            if (options.containsKey("tokens")) {
+                tokens = trainTokens(clearTextFilename, options);
+                freqTable = tokens.getFreqTable();
+                metrics.add(RunMetrics.BYTES_IN,
+                    new File(clearTextFilename).length());
+            } else if (options.containsKey("fitTable")) {
+                freqTable = fitFreqTable(clearTextFilename, options);
+                metrics.add(RunMetrics.BYTES_IN,
+                    new File(clearTextFilename).length());
+            } else {
+                metrics.add(RunMetrics.BYTES_IN,
+                    new File(freqTableFilename).length());
+                try {
+                    freqTable = importFreqTable(freqTableFilename);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+
+            // Build the Huffman tree based on the frequency table; the linear
+            // build works from the table directly, with no queue
+            metrics.phase("buildTree");
+            if (options.containsKey("linearBuild")) {
+                compactTree = CompactHuffmanTree.build(freqTable);
+            } else {
+
+                // Create a priority queue of FreqTreeNode objects
+                PriorityQueue<FreqTreeNode> nodeQueue =
+                    new PriorityQueue<FreqTreeNode>();
+
+                // Add elements to the Priority Queue
+                //nodeQueue.addAll(Arrays.asList(freqTable).subList(0, 26)); // This was a suggestion from
+                // my IDE that would replace the loop below; not sure if this would have allowed
+                for (int i = 0; i < freqTable.length; i++) {
+                    if (freqTable[i] != null) {
+                        nodeQueue.add(freqTable[i]);
+                    }
+                }
+
+                huffmanTree = buildHuffmanTree(nodeQueue);
+            }
+
+            // Traverse the Huffman tree, printing as we go along
+            // TODO need to change this to print in the correct format
+            //traverseHuffmanAndPrint(huffmanTree);
+
+            // Encode a string using the Huffman tree, and write to file
+            if (compactTree != null) {
+                compactTree.assignCodes(freqTable);
+            } else {
+                addHuffmanCodes(huffmanTree, "");
+            }
+
+            // Rebuild the tree with shorter codes, if the longest is too long
+            if (options.containsKey("maxCodeLength")) {
+                huffmanTree = limitCodeLengths(huffmanTree, freqTable,
+                    Integer.parseInt(options.get("maxCodeLength")),
+                    lengthLimitSummary);
+                System.out.print(lengthLimitSummary);
+            }
+
+            // Replace the codes with canonical codes of the same lengths, if
+            // requested
+            if (options.containsKey("canonical")) {
+                huffmanTree = CodeLengths.buildCanonicalTree(freqTable,
+                    CodeLengths.fromTable(freqTable));
+                addHuffmanCodes(huffmanTree, "");
+            }
         }
 
-        // Split encodedText on \u00A0 character to put into an array
-        // TODO make this more robust; this character isn't present for UTF-8 encoded files
-        String[] clearTextArray = clearText.toString().split("\\u00A0");
+        // Compile the codes used to encode, and the lookup table used to decode
+        metrics.phase("compileCodes");
+        metrics.setCodeStatistics(freqTable);
+        HuffmanCodebook codebook;
+        HuffmanDecodeTable decodeTable;
+        if (cache != null) {
+            codebook = cache.getCodebook();
+            decodeTable = cache.getDecodeTable();
+        } else {
+            codebook = new HuffmanCodebook(freqTable);
+            decodeTable = huffmanTree != null
+                ? new HuffmanDecodeTable(huffmanTree) : compactTree.toDecodeTable();
+        }
 
-        // Read in the encoded file
-        StringBuilder encodedText = null;
-        try {
-            encodedText = importEncodedText(encodedTextFilename);
-        } catch (Exception e) {
-            e.printStackTrace();
+        // Keep the compiled codes for later runs with the same table
+        if (cache == null && cacheFilename != null && cacheKey != 0) {
+            if (huffmanTree == null) {
+                huffmanTree = compactTree.toNodes(freqTable);
+            }
+            try {
+                CodebookCache.save(cacheFilename, cacheKey, freqTable, huffmanTree,
+                    decodeTable, lengthLimitSummary);
+            } catch (IOException ioExc) {
+                System.out.println("Error writing codebook cache " + ioExc
+                    .getMessage() + ".");
+            }
         }
 
-        // Split encodedText on \u00A0 character to put into an array
-        // TODO make this more robust; this character isn't present for UTF-8 encoded files
-        String[] encodedArray = encodedText.toString().split("\\u00A0");
+        // Serve encode and decode requests instead of coding files, if requested
+        if (options.containsKey("serve")) {
+            metrics.phase("serve");
+            serve(codebook, decodeTable, options, responses, metrics);
+            finishMetrics(metrics, options);
+            return;
+        }
 
-        // Create a priority queue of FreqTreeNode objects
-        PriorityQueue<FreqTreeNode> nodeQueue = new PriorityQueue<FreqTreeNode>();
+        // Stream the files straight through the codec, if requested
+        if (options.containsKey("stream")) {
+            metrics.phase("stream");
+            streamToFile(clearTextFilename, encodedTextFilename, outputFilename,
+                codebook, decodeTable, options.containsKey("mmap"),
+                options.containsKey("adaptive"));
+            metrics.add(RunMetrics.BYTES_IN, new File(clearTextFilename).length()
+                + new File(encodedTextFilename).length());
+            metrics.add(RunMetrics.BYTES_OUT, new File(outputFilename).length());
+            finishMetrics(metrics, options);
+            System.out.println("\nProgram completed.");
+            return;
+        }
 
-        // Add elements to the Priority Queue
-        //nodeQueue.addAll(Arrays.asList(freqTable).subList(0, 26)); // This was a suggestion from
-        // my IDE that would replace the loop below; not sure if this would have allowed
-        for (int i = 0; i < 26; i++) {
-            nodeQueue.add(freqTable[i]);
+        // Read in the clear text file
+        metrics.phase("readInput");
+        metrics.add(RunMetrics.BYTES_IN, new File(clearTextFilename).length()
+            + new File(encodedTextFilename).length());
+        String[] clearTextArray = importClearText(clearTextFilename);
+
+        // Cut the clear text into letters and tokens, if there are tokens
+        String[] symbolArray = clearTextArray;
+        if (tokens != null) {
+            symbolArray = new String[clearTextArray.length];
+            for (int i = 0; i < clearTextArray.length; i++) {
+                if (options.containsKey("optimalParse")) {
+                    symbolArray[i] = tokens.tokenize(clearTextArray[i], codebook);
+                } else {
+                    symbolArray[i] = tokens.tokenize(clearTextArray[i]);
+                }
+            }
         }
 
-        // Build the Huffman tree based on the frequency table
-        FreqTreeNode huffmanTree = new FreqTreeNode();
-        huffmanTree = buildHuffmanTree(nodeQueue);
+        // Read in the encoded file, either packed or as text
+        PackedHuffmanFile packedInput = null;
+        HuffmanDecodeTable[] blockDecodeTables = null;
+        TokenAlphabet decodeTokens = tokens;
+        String[] encodedArray = null;
+        int phraseCount;
+        if (options.containsKey("packedInput")) {
+            try {
+                if (options.containsKey("mmap")) {
+                    packedInput = PackedHuffmanFile.map(encodedTextFilename);
+                } else {
+                    packedInput = PackedHuffmanFile.read(encodedTextFilename);
+                }
+            } catch (IOException ioExc) {
+                System.out.println("Error reading packed file " + ioExc
+                    .getMessage() + ". Program exiting.");
+                System.exit(1);
+            }
+
+            // Decode with the file's own canonical code, if it has one, or
+            // with its block tables
+            if (packedInput.getCodeLengths() != null) {
+                try {
+                    if (packedInput.hasSelectors()) {
+                        blockDecodeTables = BlockCodebooks.decodeTables(
+                            packedInput.getCodeLengths());
+                    } else {
+                        decodeTable = CodeLengths.decodeTable(
+                            packedInput.getCodeLengths());
+                    }
+                } catch (RuntimeException rtExc) {
+                    System.out.println("Error reading code lengths " + rtExc
+                        .getMessage() + " Program exiting.");
+                    System.exit(1);
+                }
+            }
+
+            // Expand the phrases with the file's own tokens, if it has them,
+            // and decode them with its codes if there is no code length header
+            if (packedInput.getTokens() != null) {
+                try {
+                    decodeTokens = TokenAlphabet.fromHeader(
+                        packedInput.getTokens());
+                    if (decodeTokens.getDecodeTable() != null) {
+                        decodeTable = decodeTokens.getDecodeTable();
+                    }
+                } catch (RuntimeException rtExc) {
+                    System.out.println("Error reading tokens " + rtExc
+                        .getMessage() + " Program exiting.");
+                    System.exit(1);
+                }
+            }
 
-        // Traverse the Huffman tree, printing as we go along
-        // TODO need to change this to print in the correct format
-        //traverseHuffmanAndPrint(huffmanTree);
+            // The phrases are rendered as text only as the report is written
+            phraseCount = packedInput.getPhraseCount();
+        } else {
+            StringBuilder encodedText = null;
+            try {
+                encodedText = importEncodedText(encodedTextFilename);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
 
-        // Encode a string using the Huffman tree, and write to file
-        addHuffmanCodes(huffmanTree, "");
+            // Split encodedText on \u00A0 character to put into an array
+            // TODO make this more robust; this character isn't present for UTF-8 encoded files
+            encodedArray = encodedText.toString().split("\\u00A0");
+            phraseCount = encodedArray.length;
+        }
 
         // Encode the strings in the clearText array
-        StringBuilder[] encodedOutput = new StringBuilder[clearTextArray.length];
-        for (int i = 0; i < clearTextArray.length; i++) {
-            encodedOutput[i] = encodeHuffman(freqTable, clearTextArray[i]);
+        metrics.phase("encode");
+        // Adaptive codes carry their model from one phrase to the next
+        StringBuilder[] encodedOutput = new StringBuilder[symbolArray.length];
+        AdaptiveHuffmanCoder adaptiveEncoder = new AdaptiveHuffmanCoder();
+        for (int i = 0; i < symbolArray.length; i++) {
+            if (options.containsKey("adaptive")) {
+                encodedOutput[i] = encodeAdaptive(adaptiveEncoder,
+                    symbolArray[i]);
+            } else {
+                encodedOutput[i] = encodeHuffman(codebook, symbolArray[i]);
+            }
+            metrics.add(RunMetrics.SYMBOLS_ENCODED, symbolArray[i].length());
+            metrics.add(RunMetrics.BITS_ENCODED, encodedOutput[i].length());
         }
 
-        // Print the tree in preorder
-        File outputFile = new File(outputFilename);
-        printStringToFile("---------Huffman tree in preorder---------\n",
-            outputFile);
-        traverseHuffmanAndPrint(huffmanTree, outputFile);
+        // Also write the encoded strings as packed bits, if requested
+        StringBuilder blockTableSummary = new StringBuilder();
+        BitWriter[] plainPhrases = null;
+        if (options.containsKey("binary")) {
+            metrics.phase("encodePacked");
+            BitWriter[] packedOutput = new BitWriter[symbolArray.length];
+            long[][] chunkOffsets = null;
+            long[][] symbolOffsets = null;
+            byte[] codeLengths = null;
+            byte[][] selectors = null;
+            boolean streams = false;
+            if (options.containsKey("adaptive")) {
+
+                // Adaptive codes are encoded in one pass, in order
+                adaptiveEncoder = new AdaptiveHuffmanCoder();
+                for (int i = 0; i < symbolArray.length; i++) {
+                    packedOutput[i] = new BitWriter();
+                    encodeAdaptive(adaptiveEncoder, symbolArray[i],
+                        packedOutput[i]);
+                }
+            } else if (options.containsKey("blockTables")) {
+
+                // Train several tables on the clear text, and let each block
+                // be encoded with the one that suits it best
+                int blockSize = options.containsKey("blockSize")
+                    ? Integer.parseInt(options.get("blockSize"))
+                    : BlockCodebooks.DEFAULT_BLOCK_SIZE;
+                BlockCodebooks blockCodebooks = null;
+                try {
+                    int maxLength = options.containsKey("maxCodeLength")
+                        ? Math.min(HuffmanDecodeTable.MAX_CODE_LENGTH,
+                        Integer.parseInt(options.get("maxCodeLength")))
+                        : HuffmanDecodeTable.MAX_CODE_LENGTH;
+                    blockCodebooks = BlockCodebooks.train(symbolArray,
+                        Integer.parseInt(options.get("blockTables")), blockSize,
+                        maxLength);
+                } catch (IllegalArgumentException argExc) {
+                    System.out.println("Error training block tables " + argExc
+                        .getMessage() + " Program exiting.");
+                    System.exit(1);
+                }
+                blockTableSummary.append(blockCodebooks.summary());
+                System.out.print(blockTableSummary);
+
+                // Blocks are independent, so they are encoded in parallel
+                chunkOffsets = new long[symbolArray.length][];
+                symbolOffsets = new long[symbolArray.length][];
+                selectors = new byte[symbolArray.length][];
+                ForkJoinPool pool = createPool(options);
+                packedOutput = new ParallelHuffmanEncoder(
+                    blockCodebooks.getCodebooks(), pool, blockSize).encode(
+                    symbolArray, chunkOffsets, symbolOffsets, selectors);
+                pool.shutdown();
+                codeLengths = blockCodebooks.toHeader();
+            } else if (options.containsKey("interleave")) {
+
+                // Cut each long phrase into streams that can be decoded side
+                // by side; short ones are left as one stream
+                chunkOffsets = new long[symbolArray.length][];
+                symbolOffsets = new long[symbolArray.length][];
+                streams = true;
+                for (int i = 0; i < symbolArray.length; i++) {
+                    if (symbolArray[i].length()
+                        < InterleavedHuffmanCoder.MIN_SYMBOLS) {
+                        packedOutput[i] = new BitWriter();
+                        encodeHuffman(codebook, symbolArray[i],
+                            packedOutput[i]);
+                        continue;
+                    }
+                    chunkOffsets[i] = new long[InterleavedHuffmanCoder.STREAMS];
+                    symbolOffsets[i] =
+                        new long[InterleavedHuffmanCoder.STREAMS + 1];
+                    packedOutput[i] = InterleavedHuffmanCoder.encode(codebook,
+                        symbolArray[i], chunkOffsets[i], symbolOffsets[i]);
+                }
+            } else if (options.containsKey("threads")
+                || options.containsKey("checkpoint")) {
+
+                // Encode in chunks across the threads, and keep the chunk index
+                chunkOffsets = new long[symbolArray.length][];
+                int chunkSize = options.containsKey("chunkSize")
+                    ? Integer.parseInt(options.get("chunkSize"))
+                    : ParallelHuffmanEncoder.DEFAULT_CHUNK_SIZE;
+
+                // Checkpoints turn each chunk into a place decoding can start
+                if (options.containsKey("checkpoint")) {
+                    symbolOffsets = new long[symbolArray.length][];
+                    chunkSize = Integer.parseInt(options.get("checkpoint")) * 1024;
+                }
 
-        printFreqTable(freqTable, outputFile);
+                ForkJoinPool pool = createPool(options);
+                packedOutput = new ParallelHuffmanEncoder(codebook, pool,
+                    chunkSize).encode(symbolArray, chunkOffsets, symbolOffsets, null);
+                pool.shutdown();
+            } else {
+                for (int i = 0; i < symbolArray.length; i++) {
+                    packedOutput[i] = new BitWriter();
+                    encodeHuffman(codebook, symbolArray[i], packedOutput[i]);
+                }
+            }
+            // Chunks and streams are only an index over the same bits, so
+            // the archive can reuse them unless other codes were used
+            if (!options.containsKey("adaptive")
+                && !options.containsKey("blockTables")) {
+                plainPhrases = packedOutput;
+            }
+            // Canonical codes are stored as a header of code lengths
+            if (options.containsKey("canonical") && codeLengths == null) {
+                codeLengths = CodeLengths.toHeader(freqTable,
+                    CodeLengths.fromTable(freqTable));
+            }
+            // Tokenized text carries its tokens, and the codes if they are
+            // not in the code length header
+            byte[] tokenHeader = null;
+            if (tokens != null) {
+                tokenHeader = tokens.toHeader(codeLengths != null
+                    || options.containsKey("adaptive") ? null : codebook);
+            }
+            try {
+                if (streams) {
+                    PackedHuffmanFile.writeStreams(options.get("binary"),
+                        packedOutput, chunkOffsets, symbolOffsets, codeLengths,
+                        tokenHeader);
+                } else {
+                    PackedHuffmanFile.write(options.get("binary"), packedOutput,
+                        chunkOffsets, symbolOffsets, codeLengths, selectors,
+                        tokenHeader);
+                }
+                metrics.add(RunMetrics.BYTES_OUT,
+                    new File(options.get("binary")).length());
+            } catch (IOException ioExc) {
+                System.out.println("Error writing to file " + ioExc
+                    .getMessage() + ". Program exiting.");
+            }
+        }
+
+        // Also write the encoded strings as a seekable archive, if requested
+        if (options.containsKey("seekable")) {
+            if (options.containsKey("adaptive")) {
+                System.out.println("Error: -seekable cannot be used with "
+                    + "-adaptive, whose phrases depend on the ones before "
+                    + "them. Program exiting.");
+                System.exit(1);
+            }
+            metrics.phase("encodeSeekable");
+            BitWriter[] archivePhrases = plainPhrases;
+            if (archivePhrases == null) {
+                archivePhrases = new BitWriter[symbolArray.length];
+                for (int i = 0; i < symbolArray.length; i++) {
+                    archivePhrases[i] = new BitWriter();
+                    encodeHuffman(codebook, symbolArray[i], archivePhrases[i]);
+                }
+            }
+            byte[] archiveCodeLengths = null;
+            if (options.containsKey("canonical")) {
+                archiveCodeLengths = CodeLengths.toHeader(freqTable,
+                    CodeLengths.fromTable(freqTable));
+            }
+            byte[] archiveTokens = null;
+            if (tokens != null) {
+                archiveTokens = tokens.toHeader(archiveCodeLengths != null
+                    ? null : codebook);
+            }
+            try {
+                SeekableHuffmanFile.write(options.get("seekable"),
+                    archivePhrases, archiveCodeLengths, archiveTokens);
+                metrics.add(RunMetrics.BYTES_OUT,
+                    new File(options.get("seekable")).length());
+            } catch (IOException ioExc) {
+                System.out.println("Error writing to file " + ioExc
+                    .getMessage() + ". Program exiting.");
+            }
+        }
+
+        // Open the report once for the whole run
+        metrics.phase("report");
+        ReportWriter outputFile = null;
+        try {
+            outputFile = new ReportWriter(new File(outputFilename),
+                HuffmanStream.CHARSET, options.containsKey("asyncReport"));
+        } catch (IOException ioExc) {
+            System.out.println("Error writing to file " + ioExc.getMessage() +
+                ". Program exiting.");
+            System.exit(1);
+        }
+
+        // Print the tree in preorder, unless it is not wanted
+        if (!options.containsKey("noTree")) {
+            if (huffmanTree == null) {
+                huffmanTree = cache != null
+                    ? cache.getHuffmanTree() : compactTree.toNodes(freqTable);
+            }
+            printStringToFile("---------Huffman tree in preorder---------\n",
+                outputFile);
+            traverseHuffmanAndPrint(huffmanTree, outputFile);
+
+            printFreqTable(freqTable, outputFile);
+        }
+        if (lengthLimitSummary.length() > 0) {
+            printStringToFile("\n\n---------Code length limit---------\n",
+                outputFile);
+            printStringToFile(lengthLimitSummary.toString(), outputFile);
+        }
+        if (blockTableSummary.length() > 0) {
+            printStringToFile("\n\n---------Block tables---------\n",
+                outputFile);
+            printStringToFile(blockTableSummary.toString(), outputFile);
+        }
+        if (tokens != null) {
+            printStringToFile("\n\n---------Tokens---------\n", outputFile);
+            printStringToFile(tokens.summary(), outputFile);
+        }
 
         // Send the clear text output to the printing array
         printStringToFile("\n\n---------Input/output strings---------\n",
@@ -117,106 +555,291 @@ public class Lab3 {
         writeCodingToFile(clearTextArray, encodedOutput, outputFile);
 
         // Decode the strings in the encoded array
-        StringBuilder[] decodedOutput = new StringBuilder[encodedArray.length];
-        for (int i = 0; i < encodedArray.length; i++) {
-            decodedOutput[i] = decodeHuffman(huffmanTree, encodedArray[i],
-                freqTable, outputFile);
+        metrics.phase("decode");
+        StringBuilder[] decodedOutput = new StringBuilder[phraseCount];
+        List<DecodeError> decodeErrors = null;
+        if (options.containsKey("adaptive")) {
+
+            // Adaptive codes must be decoded in order, with one model
+            AdaptiveHuffmanCoder adaptiveDecoder = new AdaptiveHuffmanCoder();
+            for (int i = 0; i < phraseCount; i++) {
+                if (packedInput != null) {
+                    decodedOutput[i] = decodeAdaptive(adaptiveDecoder,
+                        packedInput.reader(i));
+                } else {
+                    decodedOutput[i] = decodeAdaptive(adaptiveDecoder,
+                        encodedArray[i]);
+                }
+            }
+        } else if (options.containsKey("recover")) {
+
+            // Keep whatever can be decoded and record where each phrase is bad
+            decodeErrors = new ArrayList<>();
+            RecoveringHuffmanDecoder decoder = blockDecodeTables != null
+                ? new RecoveringHuffmanDecoder(blockDecodeTables)
+                : new RecoveringHuffmanDecoder(decodeTable);
+            for (int i = 0; i < phraseCount; i++) {
+                if (packedInput != null) {
+                    decodedOutput[i] = decoder.decode(packedInput, i,
+                        decodeErrors);
+                } else {
+                    decodedOutput[i] = decoder.decode(encodedArray[i], i,
+                        decodeErrors);
+                }
+            }
+        } else if (packedInput != null && (options.containsKey("threads")
+            || blockDecodeTables != null)) {
+
+            // Split the phrases at their checkpoints across the threads; the
+            // blocks of a file with block tables are always decoded this way
+            ForkJoinPool pool = createPool(options);
+            ParallelHuffmanDecoder decoder = blockDecodeTables != null
+                ? new ParallelHuffmanDecoder(blockDecodeTables, pool)
+                : new ParallelHuffmanDecoder(decodeTable, pool);
+            decodedOutput = decoder.decode(packedInput);
+            pool.shutdown();
+        } else if (packedInput != null && options.containsKey("interleave")) {
+
+            // Decode the streams of each phrase side by side
+            InterleavedHuffmanCoder decoder =
+                new InterleavedHuffmanCoder(decodeTable);
+            for (int i = 0; i < phraseCount; i++) {
+                decodedOutput[i] = decoder.decode(packedInput, i);
+            }
+        }
+        for (int i = 0; i < phraseCount; i++) {
+            if (decodedOutput[i] != null) {
+                continue;
+            } else if (packedInput != null) {
+                decodedOutput[i] = decodeHuffman(decodeTable,
+                    packedInput.reader(i));
+            } else {
+                decodedOutput[i] = decodeHuffman(decodeTable, encodedArray[i]);
+            }
+        }
+
+        for (int i = 0; i < phraseCount; i++) {
+            String decoded = decodedOutput[i].toString();
+            if (decoded.equals(DECODE_ERROR)
+                || decoded.equals(UNSPECIFIED_DECODE_ERROR)) {
+                metrics.add(RunMetrics.DECODE_ERRORS, 1);
+            } else {
+                metrics.add(RunMetrics.SYMBOLS_DECODED, decoded.length());
+                metrics.add(RunMetrics.BITS_DECODED, packedInput != null
+                    ? packedInput.getBitLength(i) : encodedArray[i].length());
+            }
+        }
+        if (decodeErrors != null) {
+            metrics.add(RunMetrics.DECODE_ERRORS, decodeErrors.size());
+        }
+
+        // Turn decoded tokens back into letters
+        if (decodeTokens != null) {
+            for (int i = 0; i < decodedOutput.length; i++) {
+                decodedOutput[i] = decodeTokens.expand(decodedOutput[i]);
+            }
         }
 
         // Print to file
-        writeCodingToFile(encodedArray, decodedOutput, outputFile);
+        metrics.phase("report");
+        if (packedInput != null) {
+            writeCodingToFile(packedInput, decodedOutput, outputFile);
+        } else {
+            writeCodingToFile(encodedArray, decodedOutput, outputFile);
+        }
+        if (decodeErrors != null) {
+            printStringToFile("\n\n---------Decode errors---------\n",
+                outputFile);
+            if (decodeErrors.isEmpty()) {
+                printStringToFile("None\n", outputFile);
+            }
+            for (DecodeError error : decodeErrors) {
+                printStringToFile(error + "\n", outputFile);
+            }
+        }
+        try {
+            outputFile.close();
+        } catch (IOException ioExc) {
+            System.out.println("Error writing to file " + ioExc.getMessage() +
+                ". Program exiting.");
+        }
+        metrics.add(RunMetrics.BYTES_OUT, outputFile.getCharCount());
+        metrics.add(RunMetrics.REPORT_WRITES, outputFile.getWriteCount());
+        finishMetrics(metrics, options);
 
         System.out.println("\nProgram completed.");
     }
 
     /**
-     * This method traverses the Huffman tree to decode a string of encoded
-     * data.
+     * This method ends the timing of the run and writes the summary of its
+     * metrics, if one was requested.
+     *
+     * @param metrics       The metrics of the run.
+     * @param options       The runtime options; "metrics" gives the name of
+     * the summary file.
+     */
+    private static void finishMetrics(RunMetrics metrics,
+        Map<String, String> options) {
+        metrics.finish();
+        if (options.containsKey("metrics")) {
+            try {
+                metrics.writeSummary(options.get("metrics"));
+            } catch (IOException ioExc) {
+                System.out.println("Error writing to file " + ioExc
+                    .getMessage() + ".");
+            }
+        }
+    }
+
+    /**
+     * This method decodes a string of encoded data using the Huffman decode
+     * table, resolving one whole code per table lookup.
      *
-     * @param node          The node at which the start of the traversal is happening.
+     * @param table         The decode table built from the Huffman tree.
      * @param coded         The encoded string of data.
-     * @param freqLookup    The Frequency table lookup.
-     * @param outputFile    The File to which it should be written.
      * @return decoded      A StringBuilder object that contains decoded data.
      */
-    private static StringBuilder decodeHuffman(FreqTreeNode node,
-        String coded, FreqTreeNode[] freqLookup, File outputFile) {
+    static StringBuilder decodeHuffman(HuffmanDecodeTable table,
+        String coded) {
 
         // StringBuilder containing the decoded text
-        String returnChar;
         StringBuilder decoded = new StringBuilder();
-        int j;
+        int maxLength = table.getMaxLength();
+        long window = 0;
+        int bits = 0;
+        int pos = 0;
+        int entry;
         int codeLen;
+        long peek;
 
-        while (coded.length() > 0) {
-            j = 0;
+        while (pos < coded.length() || bits > 0) {
 
-            try {
-                // Traverse the Huffman tree to find the code
-                returnChar = traverseHuffmanToDecode(node, coded, j, "");
-                // Look up returnChar to get the length Huffman code
-                codeLen = encodeHuffman(freqLookup, returnChar).length();
+            // Top up the bit window, stopping early at any non-binary character
+            while (bits <= 56 && pos < coded.length()) {
+                char c = coded.charAt(pos);
+                if (c != '0' && c != '1') {
+                    break;
+                }
+                window = (window << 1) | (c - '0');
+                bits++;
+                pos++;
+            }
 
-                // Remove the 1st n characters from the coded data, where n = codeLen
-                coded = coded.substring(codeLen);
+            // Peek at the next maxLength bits, padding past the end with zeros
+            if (bits >= maxLength) {
+                peek = window >>> (bits - maxLength);
+            } else {
+                peek = window << (maxLength - bits);
+            }
+            peek &= (1L << maxLength) - 1;
 
-                // Append to the output string
-                decoded.append(returnChar);
+            entry = table.lookup(peek);
+            codeLen = HuffmanDecodeTable.lengthOf(entry);
 
-                // Catch specific exception if there is a possible invalid input code
-            } catch (StringIndexOutOfBoundsException e) {
-                return new StringBuilder(
-                    "Error reading Huffman code; potential invalid input.");
-            } catch (Exception e) { // catch general exception
-                return new StringBuilder(
-                    "Unspecified error reading Huffman code.");
+            // The code runs past the usable bits
+            if (codeLen == 0 || codeLen > bits) {
+                if (pos < coded.length()) {
+                    return new StringBuilder(UNSPECIFIED_DECODE_ERROR);
+                }
+                return new StringBuilder(DECODE_ERROR);
             }
+
+            // Consume the code and append to the output string
+            bits -= codeLen;
+            decoded.append(HuffmanDecodeTable.symbolOf(entry));
         }
 
         return decoded;
     }
 
-
     /**
-     * This method traverses the Huffman tree to find the code for a specific
-     * character.
+     * This method decodes one phrase of packed bits using the Huffman decode
+     * table.
      *
-     * @param node          The root node.
-     * @param coded         The encoded array to be decoded via the tree.
-     * @param counter       An index that helps with the traversal.
-     * @param charString    The character for which we are searching.
-     * @return              Returns the decoded array.
+     * @param table         The decode table built from the Huffman tree.
+     * @param reader        The reader positioned at the start of the phrase.
+     * @return decoded      A StringBuilder object that contains decoded data.
      */
-    private static String traverseHuffmanToDecode(FreqTreeNode node,
-        String coded, int counter, String charString)
-        throws StringIndexOutOfBoundsException {
+    static StringBuilder decodeHuffman(HuffmanDecodeTable table,
+        BitReader reader) {
+
+        StringBuilder decoded = new StringBuilder();
+        int maxLength = table.getMaxLength();
+        int entry;
+        int codeLen;
+
+        while (reader.getBitsRemaining() > 0) {
+            entry = table.lookup(reader.peekBits(maxLength));
+            codeLen = HuffmanDecodeTable.lengthOf(entry);
 
-        // Base condition
-        if (counter != 0 && node.getHuffmanCode().equals(charString)) {
-            return String.valueOf(node.getCharacter());
+            // The code runs past the end of the phrase
+            if (codeLen == 0 || codeLen > reader.getBitsRemaining()) {
+                return new StringBuilder(DECODE_ERROR);
+            }
+
+            reader.skipBits(codeLen);
+            decoded.append(HuffmanDecodeTable.symbolOf(entry));
         }
 
-        // Recursively traverse the tree
-        else {
+        return decoded;
+    }
 
-            // Go left
-            if (String.valueOf(coded.charAt(counter)).equals("0")) {
-                String decoded = traverseHuffmanToDecode(node.getLeft(),
-                    coded, counter + 1, charString + "0");
-                if (decoded != null) {
-                    return decoded;
+    /**
+     * This method streams the clear text file through the encoder and the
+     * encoded file through the decoder, writing both to the output file with
+     * memory use that does not depend on the size of the files.
+     *
+     * @param clearTextFilename     The name of the clear text file.
+     * @param encodedTextFilename   The name of the encoded text file.
+     * @param outputFilename        The name of the output file.
+     * @param codebook              The compiled Huffman codes.
+     * @param decodeTable           The decode table built from the Huffman tree.
+     * @param mapped                Whether to memory-map the encoded file
+     * instead of reading it into buffers.
+     * @param adaptive              Whether to use adaptive codes instead of the
+     * codebook and decode table.
+     */
+    private static void streamToFile(String clearTextFilename,
+        String encodedTextFilename, String outputFilename,
+        HuffmanCodebook codebook, HuffmanDecodeTable decodeTable,
+        boolean mapped, boolean adaptive) {
+
+        try (FileChannel out = FileChannel.open(Paths.get(outputFilename),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            out.write(HuffmanStream.CHARSET.encode(
+                "---------Encoded clear text---------\n"));
+            try (FileChannel in = FileChannel.open(
+                Paths.get(clearTextFilename))) {
+                if (adaptive) {
+                    HuffmanStream.encode(in, out, new AdaptiveHuffmanCoder());
+                } else {
+                    HuffmanStream.encode(in, out, codebook);
                 }
             }
-            // Go right
-            if (String.valueOf(coded.charAt(counter)).equals("1")) {
-                String decoded = traverseHuffmanToDecode(node.getRight(),
-                    coded, counter + 1, charString + "1");
-                if (decoded != null) {
-                    return decoded;
+
+            out.write(HuffmanStream.CHARSET.encode(
+                "\n\n---------Decoded encoded text---------\n"));
+            try (FileChannel in = FileChannel.open(
+                Paths.get(encodedTextFilename))) {
+                if (adaptive && mapped) {
+                    HuffmanStream.decodeMapped(in, out,
+                        new AdaptiveHuffmanCoder());
+                } else if (adaptive) {
+                    HuffmanStream.decode(in, out, new AdaptiveHuffmanCoder());
+                } else if (mapped) {
+                    HuffmanStream.decodeMapped(in, out, decodeTable);
+                } else {
+                    HuffmanStream.decode(in, out, decodeTable);
                 }
             }
+
+        } catch (IOException ioExc) {
+            System.out.println("Error streaming file " + ioExc.getMessage() +
+                ". Program exiting.");
+            System.exit(1);
         }
-        return null;
     }
 
     /**
@@ -224,17 +847,24 @@ public class Lab3 {
      * it.
      *
      * @param freqTable         The frequency table.
-     * @param outputFile        The file object to be written to.
+     * @param outputFile        The report writer to be written to.
      */
     private static void printFreqTable(FreqTreeNode[] freqTable,
-        File outputFile) {
+        ReportWriter outputFile) {
 
         printStringToFile("\n\n---------Table of Huffman values---------\n",
             outputFile);
         printStringToFile("(Char : Freq : Huffman code)\n", outputFile);
-        for (int i = 0; i < 26; i++) {
+        for (int i = 0; i < freqTable.length; i++) {
+            if (freqTable[i] == null) {
+                continue;
+            }
+            // A token is shown by its letters
+            String symbol = freqTable[i].getHuffmanSequence() != null
+                ? freqTable[i].getHuffmanSequence()
+                : String.valueOf(freqTable[i].getCharacter());
             printStringToFile(
-                freqTable[i].getCharacter() + " : " + freqTable[i]
+                symbol + " : " + freqTable[i]
                     .getFrequency() + " : " + freqTable[i].getHuffmanCode(),
                 outputFile);
             printStringToFile("\n", outputFile);
@@ -245,16 +875,11 @@ public class Lab3 {
      * Simple method to print to the file
      *
      * @param str           String to be printed
-     * @param outputFile    File object that is the output file
+     * @param outputFile    The report writer for the output file
      */
-    private static void printStringToFile(String str, File outputFile) {
+    private static void printStringToFile(String str, ReportWriter outputFile) {
         try {
-            // Create FileWriter object in append mode
-            FileWriter outWriter = new FileWriter(outputFile, true);
-
-            // Write the node to file
-            outWriter.write(str);
-            outWriter.close();
+            outputFile.write(str);
 
         } catch (IOException ioExc) {
             System.out.println("Error writing to file " + ioExc.getMessage() +
@@ -266,18 +891,15 @@ public class Lab3 {
      * This method prints a Huffman tree node to the file.
      *
      * @param node              The node to be printed.
-     * @param outputFile        The file object to be written to.
+     * @param outputFile        The report writer to be written to.
      */
-    private static void printNodeToFile(FreqTreeNode node, File outputFile) {
+    private static void printNodeToFile(FreqTreeNode node,
+        ReportWriter outputFile) {
         try {
-            // Create FileWriter object in append mode
-            FileWriter outWriter = new FileWriter(outputFile, true);
-
             // Write the node to file
-            outWriter.write(
+            outputFile.write(
                 node.getHuffmanSequence() + ": " + node.getFrequency()
                     + "\n");
-            outWriter.close();
 
         } catch (IOException ioExc) {
             System.out.println("Error writing to file " + ioExc.getMessage() +
@@ -285,6 +907,122 @@ public class Lab3 {
         }
     }
 
+    /**
+     * This method separates options, given as "-name" or "-name=value", from
+     * the file names in the runtime arguments.
+     *
+     * @param args          The runtime arguments.
+     * @param options       Map that receives each option name and value.
+     * @return              The remaining file name arguments, in order.
+     */
+    static String[] parseOptions(String[] args,
+        Map<String, String> options) {
+
+        List<String> filenames = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.startsWith("-")) {
+                int equals = arg.indexOf('=');
+                if (equals < 0) {
+                    options.put(arg.substring(1), "");
+                } else {
+                    options.put(arg.substring(1, equals),
+                        arg.substring(equals + 1));
+                }
+            } else {
+                filenames.add(arg);
+            }
+        }
+        return filenames.toArray(new String[filenames.size()]);
+    }
+
+    /**
+     * This method keeps the compiled codes warm and serves encode and decode
+     * requests with them, from stdin or from a port on the loopback address.
+     *
+     * @param codebook      The compiled Huffman codes.
+     * @param decodeTable   The decode table.
+     * @param options       The runtime options; "serve" gives the port, or is
+     * empty to serve stdin, and "threads" the number of threads.
+     * @param responses     The stream to which stdin responses are written.
+     * @param metrics       The metrics of the run, which count the requests.
+     */
+    private static void serve(HuffmanCodebook codebook,
+        HuffmanDecodeTable decodeTable, Map<String, String> options,
+        PrintStream responses, RunMetrics metrics) {
+        int threads = options.containsKey("threads")
+            ? Integer.parseInt(options.get("threads"))
+            : Runtime.getRuntime().availableProcessors();
+
+        // Open the archive whose phrases can be looked up, if there is one
+        SeekableHuffmanFile archive = null;
+        HuffmanDecodeTable archiveTable = decodeTable;
+        TokenAlphabet archiveTokens = null;
+        if (options.containsKey("archive")) {
+            try {
+                archive = SeekableHuffmanFile.open(options.get("archive"));
+                if (archive.getCodeLengths() != null) {
+                    archiveTable = CodeLengths.decodeTable(
+                        archive.getCodeLengths());
+                }
+                if (archive.getTokens() != null) {
+                    archiveTokens = TokenAlphabet.fromHeader(
+                        archive.getTokens());
+                    if (archiveTokens.getDecodeTable() != null) {
+                        archiveTable = archiveTokens.getDecodeTable();
+                    }
+                }
+            } catch (IOException ioExc) {
+                System.out.println("Error reading archive " + ioExc
+                    .getMessage() + ". Program exiting.");
+                System.exit(1);
+            } catch (RuntimeException rtExc) {
+                System.out.println("Error reading archive headers " + rtExc
+                    .getMessage() + " Program exiting.");
+                System.exit(1);
+            }
+        }
+        CodecServer server = new CodecServer(codebook, decodeTable, archive,
+            archiveTable, archiveTokens, threads);
+
+        try {
+            if (options.get("serve").isEmpty()) {
+                server.serve(System.in, responses);
+            } else {
+                int port = Integer.parseInt(options.get("serve"));
+                System.out.println("Serving on port " + port + " of "
+                    + "the loopback address.");
+                server.listen(port);
+            }
+        } catch (IOException ioExc) {
+            System.out.println("Error serving requests " + ioExc.getMessage()
+                + ". Program exiting.");
+        } finally {
+            server.shutdown();
+            metrics.add(RunMetrics.REQUESTS, server.getRequestCount());
+            if (archive != null) {
+                try {
+                    archive.close();
+                } catch (IOException ioExc) {
+                    // Only read from; nothing is lost
+                }
+            }
+        }
+    }
+
+    /**
+     * This method creates the thread pool for parallel encoding and decoding.
+     *
+     * @param options       The runtime options; "threads" gives the number of
+     * threads, which defaults to the number of processors.
+     * @return              The new pool.
+     */
+    private static ForkJoinPool createPool(Map<String, String> options) {
+        if (options.containsKey("threads")) {
+            return new ForkJoinPool(Integer.parseInt(options.get("threads")));
+        }
+        return new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
     /**
      * This method deletes the previous file, if one exists of the same name.
      *
@@ -303,22 +1041,49 @@ public class Lab3 {
      * @param input         A StringBuilder array containing the original text.
      * @param output        A StringBuilder array containing the encoded or decoded
      * text.
-     * @param outputFile    The file to which the output should be written.
+     * @param outputFile    The report writer to which the output should be written.
      */
     private static void writeCodingToFile(String[] input,
-        StringBuilder[] output, File outputFile) {
+        StringBuilder[] output, ReportWriter outputFile) {
 
         try {
-            // Create FileWriter object in append mode
-            FileWriter outWriter = new FileWriter(outputFile, true);
-
             // Loop through array and write
             for (int i = 0; i < input.length; i++) {
-                outWriter.write("\nInput: " + input[i]);
-                outWriter.write("\nOutput: " + output[i] + "\n");
+                outputFile.write("\nInput: " + input[i]);
+                outputFile.write("\nOutput: " + output[i] + "\n");
             }
 
-            outWriter.close();
+        } catch (IOException ioExc) {
+            System.out.println("Error writing to file " + ioExc.getMessage() +
+                ". Program exiting.");
+        }
+    }
+
+    /**
+     * This method writes the phrases of a packed file and their decoded output to the report.
+     * Each phrase is rendered as '0'/'1' characters a piece at a time as it is written, so that
+     * the text of the whole file is never held in memory.
+     *
+     * @param input         The packed file.
+     * @param output        The decoded phrases.
+     * @param outputFile    The report.
+     */
+    private static void writeCodingToFile(PackedHuffmanFile input,
+        StringBuilder[] output, ReportWriter outputFile) {
+
+        try {
+            for (int i = 0; i < output.length; i++) {
+                String prefix = "\nInput: ";
+                long bitLength = input.getBitLength(i);
+                long fromBit = 0;
+                do {
+                    long toBit = Math.min(bitLength, fromBit + REPORT_BITS);
+                    outputFile.write(prefix + input.toBitString(i, fromBit, toBit));
+                    prefix = "";
+                    fromBit = toBit;
+                } while (fromBit < bitLength);
+                outputFile.write("\nOutput: " + output[i] + "\n");
+            }
 
         } catch (IOException ioExc) {
             System.out.println("Error writing to file " + ioExc.getMessage() +
@@ -329,26 +1094,120 @@ public class Lab3 {
     /**
      * This method takes clear text and encodes it as Huffman.
      *
-     * @param freqTable         The frequency table.
+     * @param codebook          The compiled Huffman codes.
      * @param clear             The clear text to be encoded.
      * @return encoded          StringBuilder object containing the encoded string
      */
-    private static StringBuilder encodeHuffman(FreqTreeNode[] freqTable,
+    static StringBuilder encodeHuffman(HuffmanCodebook codebook,
         String clear) {
-        StringBuilder encoded = new StringBuilder();
+        StringBuilder encoded = new StringBuilder(clear.length() * 8);
+        codebook.encode(clear, encoded);
+        return encoded;
+    }
 
-        // Loop through the clear text array
+    /**
+     * This method takes clear text and encodes it as packed Huffman bits.
+     *
+     * @param codebook          The compiled Huffman codes.
+     * @param clear             The clear text to be encoded.
+     * @param writer            The BitWriter to which the codes are appended.
+     */
+    static void encodeHuffman(HuffmanCodebook codebook, String clear,
+        BitWriter writer) {
+        codebook.encode(clear, writer);
+    }
+
+    /**
+     * This method takes clear text and encodes it with adaptive Huffman codes.
+     *
+     * @param coder             The adaptive coder, updated as each symbol is
+     * encoded.
+     * @param clear             The clear text to be encoded.
+     * @return encoded          StringBuilder object containing the encoded string
+     */
+    static StringBuilder encodeAdaptive(AdaptiveHuffmanCoder coder,
+        String clear) {
+        StringBuilder encoded = new StringBuilder(clear.length() * 8);
         for (int i = 0; i < clear.length(); i++) {
-            for (int j = 0; j < 26; j++) {
-                if (clear.charAt(i) == freqTable[j].getCharacter()) {
+            coder.encode(clear.charAt(i), encoded);
+        }
+        return encoded;
+    }
 
-                    // Append to the StringBuilder
-                    encoded.append(freqTable[j].getHuffmanCode());
-                }
+    /**
+     * This method takes clear text and encodes it as packed adaptive Huffman
+     * bits.
+     *
+     * @param coder             The adaptive coder, updated as each symbol is
+     * encoded.
+     * @param clear             The clear text to be encoded.
+     * @param writer            The BitWriter to which the codes are appended.
+     */
+    static void encodeAdaptive(AdaptiveHuffmanCoder coder, String clear,
+        BitWriter writer) {
+        for (int i = 0; i < clear.length(); i++) {
+            coder.encode(clear.charAt(i), writer);
+        }
+    }
+
+    /**
+     * This method decodes a string of adaptive Huffman codes, one bit at a
+     * time.
+     *
+     * @param coder         The adaptive coder, updated as each symbol is
+     * decoded.
+     * @param coded         The encoded string of data.
+     * @return decoded      A StringBuilder object that contains decoded data.
+     */
+    static StringBuilder decodeAdaptive(AdaptiveHuffmanCoder coder,
+        String coded) {
+        StringBuilder decoded = new StringBuilder();
+
+        for (int i = 0; i < coded.length(); i++) {
+            char c = coded.charAt(i);
+            if (c != '0' && c != '1') {
+                coder.abandonSymbol();
+                return new StringBuilder(UNSPECIFIED_DECODE_ERROR);
+            }
+            int symbol = coder.decodeBit(c - '0');
+            if (symbol != AdaptiveHuffmanCoder.MORE_BITS) {
+                decoded.append((char) symbol);
             }
         }
 
-        return encoded;
+        // The phrase ended part way through a code
+        if (!coder.isBetweenSymbols()) {
+            coder.abandonSymbol();
+            return new StringBuilder(DECODE_ERROR);
+        }
+        return decoded;
+    }
+
+    /**
+     * This method decodes one phrase of packed adaptive Huffman bits.
+     *
+     * @param coder         The adaptive coder, updated as each symbol is
+     * decoded.
+     * @param reader        The reader positioned at the start of the phrase.
+     * @return decoded      A StringBuilder object that contains decoded data.
+     */
+    static StringBuilder decodeAdaptive(AdaptiveHuffmanCoder coder,
+        BitReader reader) {
+        StringBuilder decoded = new StringBuilder();
+
+        while (reader.getBitsRemaining() > 0) {
+            int symbol = coder.decodeBit((int) reader.readBits(1));
+            if (symbol != AdaptiveHuffmanCoder.MORE_BITS) {
+                decoded.append((char) symbol);
+            }
+        }
+
+        // The phrase ended part way through a code
+        if (!coder.isBetweenSymbols()) {
+            coder.abandonSymbol();
+            return new StringBuilder(DECODE_ERROR);
+        }
+        return decoded;
     }
 
     /**
@@ -357,7 +1216,7 @@ public class Lab3 {
      * @param encoded       The encoded text.
      * @param node          The root node of the Huffman tree.
      */
-    private static void addHuffmanCodes(FreqTreeNode node, String encoded) {
+    static void addHuffmanCodes(FreqTreeNode node, String encoded) {
 
         // Add the code when a leaf node is found; base case
         if (node.getLeft() == null && node.getRight() == null) {
@@ -372,14 +1231,61 @@ public class Lab3 {
         addHuffmanCodes(node.getRight(), encoded + "1");
     }
 
+    /**
+     * This method limits the length of the longest Huffman code. If any code
+     * is longer than the limit, the optimal lengths under the limit are found
+     * with package-merge, and a new tree is built with canonical codes of
+     * those lengths. The cost of the limit, in average bits per symbol, is
+     * added to the summary.
+     *
+     * @param huffmanTree       The root node of the Huffman tree, with codes
+     * assigned.
+     * @param freqTable         The frequency table.
+     * @param maxLength         The longest code allowed.
+     * @param summary           StringBuilder that receives the summary.
+     * @return                  The root node of the tree to be used.
+     */
+    private static FreqTreeNode limitCodeLengths(FreqTreeNode huffmanTree,
+        FreqTreeNode[] freqTable, int maxLength, StringBuilder summary) {
+
+        int[] lengths = CodeLengths.fromTable(freqTable);
+        double unlimited = CodeLengths.averageLength(freqTable, lengths);
+        if (CodeLengths.max(lengths) <= maxLength) {
+            summary.append(String.format("Longest code is %d bits; no limit "
+                + "needed for %d bits.%n", CodeLengths.max(lengths), maxLength));
+            return huffmanTree;
+        }
+
+        int[] limitedLengths;
+        try {
+            limitedLengths = CodeLengths.packageMerge(freqTable, maxLength);
+        } catch (IllegalArgumentException argExc) {
+            summary.append("Code length limit ignored: ")
+                .append(argExc.getMessage()).append(String.format("%n"));
+            return huffmanTree;
+        }
+        double limited = CodeLengths.averageLength(freqTable, limitedLengths);
+
+        // Assign the new codes to the table
+        FreqTreeNode limitedTree = CodeLengths.buildCanonicalTree(freqTable,
+            limitedLengths);
+        addHuffmanCodes(limitedTree, "");
+
+        summary.append(String.format("Longest code cut from %d to %d bits: "
+                + "%.4f bits/symbol instead of %.4f (%.2f%% larger output).%n",
+            CodeLengths.max(lengths), CodeLengths.max(limitedLengths), limited,
+            unlimited, (limited / unlimited - 1) * 100));
+        return limitedTree;
+    }
+
     /**
      * This method traverses the Huffman tree and returns the structure of the
      * tree.
-     * @param outputFile        The file to which output will be written.
+     * @param outputFile        The report writer to which output will be written.
      * @param huffmanTree       The root node of the Huffman tree.
      */
     private static void traverseHuffmanAndPrint(FreqTreeNode huffmanTree,
-        File outputFile) {
+        ReportWriter outputFile) {
 
         // Base case for when recursion should end
         if (huffmanTree == null) {
@@ -404,7 +1310,7 @@ public class Lab3 {
      * @param nodeQueue     The priority queue containing frequency table data.
      * @return              The root node of the tree.
      */
-    private static FreqTreeNode buildHuffmanTree(
+    static FreqTreeNode buildHuffmanTree(
         PriorityQueue<FreqTreeNode> nodeQueue) {
         FreqTreeNode rootNode = null;
         FreqTreeNode smallestNode;
@@ -432,6 +1338,22 @@ public class Lab3 {
         return rootNode;
     }
 
+    /**
+     * Builds the Huffman tree after a single sort, using the two-queue method
+     * of CompactHuffmanTree, and returns it as FreqTreeNode objects. Nodes are
+     * taken in the same order as from the priority queue of buildHuffmanTree(),
+     * so the codes are the same. Merged nodes do not concatenate their
+     * children's sequences. Children are placed left or right by the same
+     * rules as breakTies().
+     *
+     * @param freqTable     The frequency table; null entries are skipped.
+     * @return              The root node of the tree.
+     */
+    static FreqTreeNode buildHuffmanTreeLinear(
+        FreqTreeNode[] freqTable) {
+        return CompactHuffmanTree.build(freqTable).toNodes(freqTable);
+    }
+
     /**
      * This breaks ties between two nodes and returns the temporary, combined
      * node.
@@ -519,9 +1441,10 @@ public class Lab3 {
 
         try {
             // Create the file and scanner objects
+            // The phrase separator (0xA0) is read as the same character on any platform
             File freqTableFile = new File(encodedTextFilename);
-            Scanner freqTableScanner = new Scanner(
-                new BufferedReader(new FileReader(freqTableFile)));
+            Scanner freqTableScanner = new Scanner(new BufferedReader(
+                new InputStreamReader(new FileInputStream(freqTableFile), HuffmanStream.CHARSET)));
 
             // Read the file line by line
             while (freqTableScanner.hasNextLine()) {
@@ -539,42 +1462,84 @@ public class Lab3 {
     }
 
     /**
-     * This method imports the clear text file.
+     * This method imports the clear text file, removing punctuation and
+     * whitespace, upper-casing letters and splitting it into phrases in one
+     * pass over its bytes.
      *
      * @param clearTextFilename The name of the file containing the clear
      * text.
-     * @return clearText        StringBuilder object of the clear text.
+     * @return phrases          The normalized phrases of the clear text.
      */
-    private static StringBuilder importClearText(String clearTextFilename) {
-
-        StringBuilder clearText = new StringBuilder();
-        String tempLine;
+    private static String[] importClearText(String clearTextFilename) {
 
         try {
-            // Create the file and scanner objects
-            File freqTableFile = new File(clearTextFilename);
-            Scanner freqTableScanner = new Scanner(
-                new BufferedReader(new FileReader(freqTableFile)));
-
-            // Read the file line by line
-            while (freqTableScanner.hasNextLine()) {
-                tempLine = freqTableScanner.nextLine();
+            return ClearTextNormalizer.readPhrases(clearTextFilename);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
 
-                // Remove punctuation from string
-                tempLine = tempLine.replaceAll("[\\p{P}|\\s]", "");
+        return new String[] {""};
+    }
 
-                // Convert all characters to uppercase for easier processing
-                tempLine = tempLine.toUpperCase();
+    /**
+     * This method chooses tokens for the clear text file and counts the
+     * letters and tokens in it.
+     *
+     * @param clearTextFilename     The name of the file containing the clear
+     * text.
+     * @param options               The runtime options; "tokens" gives the
+     * most tokens to choose.
+     * @return tokens               The letters and tokens, with their
+     * frequency table.
+     */
+    private static TokenAlphabet trainTokens(String clearTextFilename,
+        Map<String, String> options) {
 
-                // Append temp line to the StringBuilder
-                clearText.append(tempLine);
-            }
+        // Only whole phrases in memory can be cut into tokens
+        if (options.containsKey("stream") || options.containsKey("serve")) {
+            System.out.println("Error: -tokens cannot be used with -stream or "
+                + "-serve. Program exiting.");
+            System.exit(1);
+        }
 
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+        String[] phrases = importClearText(clearTextFilename);
+        TokenAlphabet tokens = null;
+        try {
+            tokens = TokenAlphabet.train(phrases,
+                Integer.parseInt(options.get("tokens")));
+        } catch (IllegalArgumentException argExc) {
+            System.out.println("Error choosing tokens " + argExc.getMessage()
+                + " Program exiting.");
+            System.exit(1);
         }
+        System.out.print(tokens.summary());
+        return tokens;
+    }
+
+    /**
+     * This method builds the frequency table by counting the symbols in the
+     * clear text file, in parallel.
+     *
+     * @param clearTextFilename     The name of the file containing the clear
+     * text.
+     * @param options               The runtime options, for the thread count.
+     * @return freqTable            The frequency table, with one entry for
+     * each symbol that occurs.
+     */
+    private static FreqTreeNode[] fitFreqTable(String clearTextFilename,
+        Map<String, String> options) {
 
-        return clearText;
+        ForkJoinPool pool = createPool(options);
+        try (FileChannel in = FileChannel.open(Paths.get(clearTextFilename))) {
+            return SymbolHistogram.count(in, pool).toFreqTable();
+        } catch (IOException ioExc) {
+            System.out.println("Error reading file " + ioExc.getMessage() +
+                ". Program exiting.");
+            System.exit(1);
+            return null;
+        } finally {
+            pool.shutdown();
+        }
     }
 
     /**
@@ -585,7 +1550,7 @@ public class Lab3 {
      * @return freqTable    The frequency table, stored in an array of
      * Strings.
      */
-    private static FreqTreeNode[] importFreqTable(String filename) {
+    static FreqTreeNode[] importFreqTable(String filename) {
 
         FreqTreeNode[] freqTable = new FreqTreeNode[26];
         String tempLine;
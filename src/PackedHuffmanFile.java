@@ -0,0 +1,737 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class reads and writes the binary form of Huffman-encoded phrases. Instead of one
+ * '0'/'1' character per bit, each phrase is stored as packed bits.
+ *
+ * The file layout is:
+ *   int    magic number "HUFP"
+ *   int    flags
+ *   int    number of phrases
+ *   if FLAG_CODE_LENGTHS is set:
+ *     int    number of bytes in the code length header
+ *     byte[] the header, as written by CodeLengths.toHeader(), or by BlockCodebooks.toHeader()
+ *            if FLAG_SELECTORS is set
+ *   if FLAG_TOKENS is set:
+ *     int    number of bytes in the token header
+ *     byte[] the header, as written by TokenAlphabet.toHeader()
+ * followed by, for each phrase:
+ *   long   number of bits in the phrase
+ *   if FLAG_CHUNK_INDEX is set:
+ *     int    number of chunks the phrase was encoded in
+ *     for each chunk:
+ *       long   the bit offset at which the chunk starts
+ *       long   if FLAG_CHECKPOINTS is set, the number of symbols before the chunk
+ *       byte   if FLAG_SELECTORS is set, the table the chunk was encoded with
+ *   if FLAG_CHECKPOINTS is set:
+ *     long   the number of symbols in the phrase
+ *   if FLAG_STREAMS is set:
+ *     varint the number of symbols in the phrase if it is cut into streams, or 0 if not
+ *     varint if it is, the number of bits in each of the first STREAMS - 1 streams
+ *   byte[] the packed bits, padded with zeros to a whole byte
+ *
+ * A varint holds a value seven bits to a byte, low bits first, with the top bit set in every
+ * byte but the last. A phrase cut into InterleavedHuffmanCoder.STREAMS streams is read as
+ * having a checkpoint at the start of each, so a file never has both FLAG_STREAMS and
+ * FLAG_CHUNK_INDEX.
+ *
+ * A mapped file may be larger than one buffer can hold. Its layout is read through windows of
+ * HuffmanStream.MAP_WINDOW_SIZE bytes, and its phrases are then mapped in segments of about that
+ * size that each hold whole phrases, so that every phrase can be read from a single buffer.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class PackedHuffmanFile {
+
+    static final int MAGIC = 0x48554650;
+
+    /**
+     * Flag set when each phrase carries the bit offsets of its encoded chunks.
+     */
+    static final int FLAG_CHUNK_INDEX = 1;
+
+    /**
+     * Flag set when each chunk also carries its symbol offset, making it a checkpoint at which
+     * decoding can start.
+     */
+    static final int FLAG_CHECKPOINTS = 2;
+
+    /**
+     * Flag set when the file starts with the code lengths of a canonical code, from which it
+     * can be decoded without the frequency table.
+     */
+    static final int FLAG_CODE_LENGTHS = 4;
+
+    /**
+     * Flag set when each checkpoint also carries a selector naming which of several canonical
+     * codes its chunk was encoded with. Files with selectors always have checkpoints and code
+     * lengths.
+     */
+    static final int FLAG_SELECTORS = 8;
+
+    /**
+     * Flag set when the phrases are cut into letters and tokens, and the file holds the text of
+     * each token, so that it can be decoded without learning the tokens again.
+     */
+    static final int FLAG_TOKENS = 16;
+
+    /**
+     * Flag set when each phrase says whether it is cut into streams to be decoded side by side,
+     * and if so how long each stream is.
+     */
+    static final int FLAG_STREAMS = 32;
+
+    private final ByteBuffer[] segments;
+    private final byte[] codeLengths;
+    private final byte[] tokens;
+    private final int[] phraseSegments;
+    private final int[] phraseOffsets;
+    private final long[] phraseBitLengths;
+    private final long[][] chunkOffsets;
+    private final long[][] symbolOffsets;
+    private final byte[][] selectors;
+    private final boolean hasSelectors;
+
+    /**
+     * Constructor for a packed file whose contents have been read or mapped.
+     * @param windows       The contents of the file, in windows of equal size but the last.
+     * @param windowSize    The number of bytes in each window but the last.
+     * @param channel       The file, from which the phrases are mapped in segments if there is
+     * more than one window, or null if the contents are in a single window.
+     * @throws IOException  If the contents are not a packed Huffman file.
+     */
+    private PackedHuffmanFile(ByteBuffer[] windows, long windowSize, FileChannel channel)
+        throws IOException {
+        Contents data = new Contents(windows, windowSize);
+
+        if (data.size < 12 || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a packed Huffman file.");
+        }
+        int flags = data.getInt(4);
+        int phraseCount = data.getInt(8);
+        if (phraseCount < 0) {
+            throw new IOException("Packed Huffman file is malformed.");
+        }
+        this.phraseSegments = new int[phraseCount];
+        this.phraseOffsets = new int[phraseCount];
+        this.phraseBitLengths = new long[phraseCount];
+        this.chunkOffsets = new long[phraseCount][];
+        this.symbolOffsets = new long[phraseCount][];
+        this.selectors = new byte[phraseCount][];
+        this.hasSelectors = (flags & FLAG_SELECTORS) != 0;
+        if ((flags & FLAG_SELECTORS) != 0 && ((flags & FLAG_CHECKPOINTS) == 0
+            || (flags & FLAG_CODE_LENGTHS) == 0)) {
+            throw new IOException("Packed Huffman file has selectors without tables.");
+        }
+        if ((flags & FLAG_STREAMS) != 0 && (flags & FLAG_CHUNK_INDEX) != 0) {
+            throw new IOException("Packed Huffman file has both streams and chunks.");
+        }
+        if ((flags & (FLAG_CHECKPOINTS | FLAG_SELECTORS)) != 0
+            && (flags & FLAG_CHUNK_INDEX) == 0) {
+            throw new IOException("Packed Huffman file is malformed.");
+        }
+
+        // Read the code length and token headers, if there are any
+        long offset = 12;
+        this.codeLengths = (flags & FLAG_CODE_LENGTHS) != 0 ? data.getHeader(offset) : null;
+        if (codeLengths != null) {
+            offset += 4 + codeLengths.length;
+        }
+        this.tokens = (flags & FLAG_TOKENS) != 0 ? data.getHeader(offset) : null;
+        if (tokens != null) {
+            offset += 4 + tokens.length;
+        }
+
+        // Record where each phrase starts
+        long[] phraseStarts = new long[phraseCount];
+        for (int i = 0; i < phraseCount; i++) {
+            phraseBitLengths[i] = data.getLong(offset);
+            offset += 8;
+            if (phraseBitLengths[i] < 0
+                || (phraseBitLengths[i] + 7) >>> 3 > Integer.MAX_VALUE) {
+                throw new IOException("Packed Huffman file is malformed.");
+            }
+
+            // Read the chunk index, if there is one
+            if ((flags & FLAG_CHUNK_INDEX) != 0) {
+                int chunks = data.getInt(offset);
+                offset += 4;
+                if (chunks < 0 || chunks > (data.size - offset) / 8) {
+                    throw new IOException("Packed Huffman file is truncated.");
+                }
+                chunkOffsets[i] = new long[chunks];
+                if ((flags & FLAG_CHECKPOINTS) != 0) {
+                    symbolOffsets[i] = new long[chunks + 1];
+                }
+                if ((flags & FLAG_SELECTORS) != 0) {
+                    selectors[i] = new byte[chunks];
+                }
+                for (int j = 0; j < chunks; j++) {
+                    chunkOffsets[i][j] = data.getLong(offset);
+                    offset += 8;
+                    if (symbolOffsets[i] != null) {
+                        symbolOffsets[i][j] = data.getLong(offset);
+                        offset += 8;
+                    }
+                    if (selectors[i] != null) {
+                        selectors[i][j] = data.get(offset);
+                        offset++;
+                    }
+                }
+            }
+            if ((flags & FLAG_CHECKPOINTS) != 0) {
+                symbolOffsets[i][symbolOffsets[i].length - 1] = data.getLong(offset);
+                offset += 8;
+            }
+
+            // Turn the lengths of a phrase's streams into a checkpoint at the start of each
+            if ((flags & FLAG_STREAMS) != 0) {
+                long symbols = data.getVarLong(offset);
+                offset += varLongSize(symbols);
+                if (symbols > 0) {
+                    chunkOffsets[i] = new long[InterleavedHuffmanCoder.STREAMS];
+                    symbolOffsets[i] = InterleavedHuffmanCoder.streamStarts(symbols);
+                    for (int k = 1; k < InterleavedHuffmanCoder.STREAMS; k++) {
+                        long streamBits = data.getVarLong(offset);
+                        offset += varLongSize(streamBits);
+                        if (streamBits > phraseBitLengths[i] - chunkOffsets[i][k - 1]) {
+                            throw new IOException("Packed Huffman file is malformed.");
+                        }
+                        chunkOffsets[i][k] = chunkOffsets[i][k - 1] + streamBits;
+                    }
+                }
+            }
+
+            phraseStarts[i] = offset;
+            offset += (phraseBitLengths[i] + 7) >>> 3;
+            if (offset > data.size) {
+                throw new IOException("Packed Huffman file is truncated.");
+            }
+        }
+
+        // Keep the single window, or map segments that each hold whole phrases
+        if (channel == null) {
+            this.segments = windows;
+            for (int i = 0; i < phraseCount; i++) {
+                phraseOffsets[i] = (int) phraseStarts[i];
+            }
+        } else {
+            this.segments = mapSegments(channel, phraseStarts, phraseBitLengths,
+                phraseSegments, phraseOffsets);
+        }
+    }
+
+    /**
+     * This method reads a packed file.
+     * @param filename      The name of the file to be read.
+     * @return              The packed file.
+     * @throws IOException  If the file cannot be read or is not a packed Huffman file.
+     */
+    public static PackedHuffmanFile read(String filename) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(Paths.get(filename)));
+        return new PackedHuffmanFile(new ByteBuffer[] {data}, data.limit(), null);
+    }
+
+    /**
+     * This method memory-maps a packed file instead of reading it onto the heap. Phrases are
+     * decoded straight from the mapped pages. The file may be larger than 2 GB, as long as each
+     * phrase is smaller.
+     * @param filename      The name of the file to be mapped.
+     * @return              The packed file.
+     * @throws IOException  If the file cannot be mapped or is not a packed Huffman file.
+     */
+    public static PackedHuffmanFile map(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename))) {
+            long size = channel.size();
+            long windowSize = HuffmanStream.MAP_WINDOW_SIZE;
+            ByteBuffer[] windows = new ByteBuffer[(int) Math.max(1,
+                (size + windowSize - 1) / windowSize)];
+            for (int i = 0; i < windows.length; i++) {
+                long position = i * windowSize;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(windowSize, size - position));
+            }
+            return new PackedHuffmanFile(windows, windowSize,
+                windows.length > 1 ? channel : null);
+        }
+    }
+
+    /**
+     * This method maps the phrases of a file in segments of whole phrases, starting a new
+     * segment once the next phrase would take one past HuffmanStream.MAP_WINDOW_SIZE bytes.
+     * @param channel           The file.
+     * @param phraseStarts      The position in the file of each phrase's bits.
+     * @param bitLengths        The number of bits in each phrase.
+     * @param phraseSegments    Array receiving the segment that holds each phrase.
+     * @param phraseOffsets     Array receiving the index within its segment of each phrase.
+     * @return                  The mapped segments.
+     * @throws IOException      If the file cannot be mapped.
+     */
+    private static ByteBuffer[] mapSegments(FileChannel channel, long[] phraseStarts,
+        long[] bitLengths, int[] phraseSegments, int[] phraseOffsets) throws IOException {
+        List<ByteBuffer> segments = new ArrayList<>();
+        int first = 0;
+        while (first < phraseStarts.length) {
+            long start = phraseStarts[first];
+            int next = first;
+            long end = start;
+            while (next < phraseStarts.length) {
+                long phraseEnd = phraseStarts[next] + ((bitLengths[next] + 7) >>> 3);
+                if (next > first && phraseEnd - start > HuffmanStream.MAP_WINDOW_SIZE) {
+                    break;
+                }
+                phraseSegments[next] = segments.size();
+                phraseOffsets[next] = (int) (phraseStarts[next] - start);
+                end = phraseEnd;
+                next++;
+            }
+            segments.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+            first = next;
+        }
+        return segments.toArray(new ByteBuffer[segments.size()]);
+    }
+
+    /**
+     * This method writes encoded phrases to a packed file. Each part after the phrases is
+     * optional, and is left out when it is null.
+     * @param filename      The name of the file to be written.
+     * @param phrases       The encoded phrases.
+     * @param chunkOffsets  The chunk bit offsets of each phrase, or null for no index.
+     * @param symbolOffsets The symbols before each chunk of each phrase, followed by the total
+     * for the phrase, or null for no checkpoints. Checkpoints need the chunk index.
+     * @param codeLengths   The code length header of the canonical code, or null for none.
+     * @param selectors     The table of each chunk of each phrase, or null for none. Selectors
+     * need checkpoints, and a header written by BlockCodebooks.toHeader().
+     * @param tokens        The token header written by TokenAlphabet.toHeader(), or null for
+     * none.
+     * @throws IOException  If the file cannot be written.
+     */
+    public static void write(String filename, BitWriter[] phrases,
+        long[][] chunkOffsets, long[][] symbolOffsets, byte[] codeLengths,
+        byte[][] selectors, byte[] tokens) throws IOException {
+
+        int flags = 0;
+        if (chunkOffsets != null) {
+            flags |= FLAG_CHUNK_INDEX;
+            if (symbolOffsets != null) {
+                flags |= FLAG_CHECKPOINTS;
+                if (selectors != null && codeLengths != null) {
+                    flags |= FLAG_SELECTORS;
+                }
+            }
+        }
+        write(filename, phrases, chunkOffsets, symbolOffsets, codeLengths, selectors, tokens,
+            flags);
+    }
+
+    /**
+     * This method writes phrases to a packed file, some of them cut into streams by
+     * InterleavedHuffmanCoder.encode(), storing only the length of each stream.
+     * @param filename      The name of the file to be written.
+     * @param phrases       The encoded phrases.
+     * @param chunkOffsets  The bit offset of each stream of each phrase, or null for a phrase
+     * that is one stream.
+     * @param symbolOffsets The symbols before each stream of each phrase, followed by the total
+     * for the phrase, or null for a phrase that is one stream.
+     * @param codeLengths   The code length header, or null for none.
+     * @param tokens        The token header written by TokenAlphabet.toHeader(), or null for
+     * none.
+     * @throws IOException  If the file cannot be written.
+     */
+    public static void writeStreams(String filename, BitWriter[] phrases,
+        long[][] chunkOffsets, long[][] symbolOffsets, byte[] codeLengths, byte[] tokens)
+        throws IOException {
+        write(filename, phrases, chunkOffsets, symbolOffsets, codeLengths, null, tokens,
+            FLAG_STREAMS);
+    }
+
+    /**
+     * This method writes a packed file with the given layout flags.
+     * @param filename      The name of the file to be written.
+     * @param phrases       The encoded phrases.
+     * @param chunkOffsets  The chunk bit offsets of each phrase, or null for no index.
+     * @param symbolOffsets The symbols before each chunk of each phrase, followed by the total
+     * for the phrase, or null for no checkpoints.
+     * @param codeLengths   The code length header, or null for none.
+     * @param selectors     The table of each chunk of each phrase, or null for none.
+     * @param tokens        The token header, or null for none.
+     * @param flags         The flags for the chunk index, checkpoints, selectors or streams;
+     * those for the headers are added.
+     * @throws IOException  If the file cannot be written.
+     */
+    private static void write(String filename, BitWriter[] phrases,
+        long[][] chunkOffsets, long[][] symbolOffsets, byte[] codeLengths,
+        byte[][] selectors, byte[] tokens, int flags) throws IOException {
+        if (codeLengths != null) {
+            flags |= FLAG_CODE_LENGTHS;
+        }
+        if (tokens != null) {
+            flags |= FLAG_TOKENS;
+        }
+
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(filename)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(flags);
+            out.writeInt(phrases.length);
+            if (codeLengths != null) {
+                out.writeInt(codeLengths.length);
+                out.write(codeLengths);
+            }
+            if (tokens != null) {
+                out.writeInt(tokens.length);
+                out.write(tokens);
+            }
+            for (int i = 0; i < phrases.length; i++) {
+                out.writeLong(phrases[i].getBitLength());
+                if ((flags & FLAG_CHUNK_INDEX) != 0) {
+                    out.writeInt(chunkOffsets[i].length);
+                    for (int j = 0; j < chunkOffsets[i].length; j++) {
+                        out.writeLong(chunkOffsets[i][j]);
+                        if ((flags & FLAG_CHECKPOINTS) != 0) {
+                            out.writeLong(symbolOffsets[i][j]);
+                        }
+                        if ((flags & FLAG_SELECTORS) != 0) {
+                            out.writeByte(selectors[i][j]);
+                        }
+                    }
+                }
+                if ((flags & FLAG_CHECKPOINTS) != 0) {
+                    out.writeLong(symbolOffsets[i][chunkOffsets[i].length]);
+                }
+                if ((flags & FLAG_STREAMS) != 0) {
+                    if (chunkOffsets[i] == null) {
+                        writeVarLong(out, 0);
+                    } else {
+                        writeVarLong(out, symbolOffsets[i][chunkOffsets[i].length]);
+                        for (int k = 1; k < chunkOffsets[i].length; k++) {
+                            writeVarLong(out, chunkOffsets[i][k] - chunkOffsets[i][k - 1]);
+                        }
+                    }
+                }
+                out.write(phrases[i].toByteArray());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Getter method for the number of phrases.
+     * @return      The number of phrases in the file.
+     */
+    public int getPhraseCount() {
+        return this.phraseOffsets.length;
+    }
+
+    /**
+     * Getter method for the code length header.
+     * @return      The header bytes, or null if the file has none.
+     */
+    public byte[] getCodeLengths() {
+        return this.codeLengths;
+    }
+
+    /**
+     * Getter method for the token header.
+     * @return      The header bytes, or null if the file has no tokens.
+     */
+    public byte[] getTokens() {
+        return this.tokens;
+    }
+
+    /**
+     * Getter method for the length of a phrase.
+     * @param index     The index of the phrase.
+     * @return          The number of bits in the phrase.
+     */
+    public long getBitLength(int index) {
+        return this.phraseBitLengths[index];
+    }
+
+    /**
+     * Getter method for the chunk index of a phrase.
+     * @param index     The index of the phrase.
+     * @return          The bit offset at which each chunk starts, or null if the file has no
+     * chunk index.
+     */
+    public long[] getChunkOffsets(int index) {
+        return this.chunkOffsets[index];
+    }
+
+    /**
+     * Getter method for the checkpoints of a phrase.
+     * @param index     The index of the phrase.
+     * @return          The number of symbols before each chunk, followed by the total for the
+     * phrase, or null if the file has no checkpoints.
+     */
+    public long[] getSymbolOffsets(int index) {
+        return this.symbolOffsets[index];
+    }
+
+    /**
+     * This method checks that the checkpoints of a phrase could have been written by an
+     * encoder: the first chunk starts at the start of the phrase, no offset goes backwards or
+     * past the end of the phrase, and no chunk holds more symbols than bits, since every code is
+     * at least one bit long. A decoder checks this before sizing its output from the symbol
+     * counts, which are otherwise read from the file unchecked.
+     * @param index     The index of the phrase.
+     * @return          True if the phrase has checkpoints and they are consistent.
+     */
+    public boolean hasValidCheckpoints(int index) {
+        long[] chunks = chunkOffsets[index];
+        long[] symbols = symbolOffsets[index];
+        if (symbols == null || chunks.length == 0 || chunks[0] != 0 || symbols[0] != 0
+            || symbols[chunks.length] > Integer.MAX_VALUE) {
+            return false;
+        }
+        for (int j = 0; j < chunks.length; j++) {
+            long end = j + 1 < chunks.length ? chunks[j + 1] : phraseBitLengths[index];
+            if (end < chunks[j] || end > phraseBitLengths[index]
+                || symbols[j + 1] < symbols[j]
+                || symbols[j + 1] - symbols[j] > end - chunks[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Getter method for the selectors of a phrase.
+     * @param index     The index of the phrase.
+     * @return          The table each chunk was encoded with, or null if the file has no
+     * selectors.
+     */
+    public byte[] getSelectors(int index) {
+        return this.selectors[index];
+    }
+
+    /**
+     * This method tests whether the chunks of the file carry selectors.
+     * @return      True if the code length header holds several tables.
+     */
+    public boolean hasSelectors() {
+        return this.hasSelectors;
+    }
+
+    /**
+     * Getter method for the bytes that hold a phrase, for decoders that read the bits directly.
+     * @param index     The index of the phrase.
+     * @return          A read-only view of the buffer holding the phrase.
+     */
+    ByteBuffer getBuffer(int index) {
+        return this.segments[phraseSegments[index]].asReadOnlyBuffer();
+    }
+
+    /**
+     * Getter method for the position of a phrase's bits.
+     * @param index     The index of the phrase.
+     * @return          The index in getBuffer(index) of the first byte of the phrase.
+     */
+    int getByteOffset(int index) {
+        return this.phraseOffsets[index];
+    }
+
+    /**
+     * This method opens a reader over the bits of one phrase.
+     * @param index     The index of the phrase.
+     * @return          A BitReader positioned at the start of the phrase.
+     */
+    public BitReader reader(int index) {
+        return new BitReader(segments[phraseSegments[index]], phraseOffsets[index],
+            phraseBitLengths[index]);
+    }
+
+    /**
+     * This method opens a reader over a range of bits within one phrase.
+     * @param index     The index of the phrase.
+     * @param fromBit   The bit of the phrase at which reading starts.
+     * @param toBit     The bit of the phrase at which reading stops.
+     * @return          A BitReader positioned at fromBit.
+     */
+    public BitReader reader(int index, long fromBit, long toBit) {
+        return new BitReader(segments[phraseSegments[index]], phraseOffsets[index], fromBit,
+            toBit);
+    }
+
+    /**
+     * This method renders a phrase as '0'/'1' characters, as in the textual encoded files.
+     * @param index     The index of the phrase.
+     * @return          The phrase as a String.
+     */
+    public String toBitString(int index) {
+        return toBitString(index, 0, phraseBitLengths[index]);
+    }
+
+    /**
+     * This method renders a range of bits within a phrase as '0'/'1' characters, so that a
+     * long phrase can be rendered a piece at a time.
+     * @param index     The index of the phrase.
+     * @param fromBit   The bit of the phrase at which the range starts.
+     * @param toBit     The bit of the phrase at which the range stops.
+     * @return          The range as a String.
+     */
+    public String toBitString(int index, long fromBit, long toBit) {
+        BitReader reader = reader(index, fromBit, toBit);
+        StringBuilder bits = new StringBuilder((int) (toBit - fromBit));
+        while (reader.getBitsRemaining() > 0) {
+            bits.append((char) ('0' + reader.readBits(1)));
+        }
+        return bits.toString();
+    }
+
+    /**
+     * This method writes a varint.
+     * @param out           The stream to which the value is written.
+     * @param value         The value, which must not be negative.
+     * @throws IOException  If the stream fails.
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while (value >= 0x80) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * This method gives the number of bytes in a varint.
+     * @param value     The value.
+     * @return          The number of bytes writeVarLong() writes for it.
+     */
+    private static int varLongSize(long value) {
+        int size = 1;
+        while (value >= 0x80) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * This class reads the fields of a file whose contents are held in several windows, any of
+     * which a field may straddle.
+     */
+    private static class Contents {
+
+        private final ByteBuffer[] windows;
+        private final long windowSize;
+        private final long size;
+
+        /**
+         * Constructor for the contents of a file.
+         * @param windows       The windows, of equal size but the last.
+         * @param windowSize    The number of bytes in each window but the last.
+         */
+        Contents(ByteBuffer[] windows, long windowSize) {
+            this.windows = windows;
+            this.windowSize = windowSize;
+            this.size = (windows.length - 1) * windowSize + windows[windows.length - 1].limit();
+        }
+
+        /**
+         * This method reads a byte.
+         * @param position      The position of the byte in the file.
+         * @return              The byte.
+         * @throws IOException  If the file ends before the byte.
+         */
+        byte get(long position) throws IOException {
+            if (position < 0 || position >= size) {
+                throw new IOException("Packed Huffman file is truncated.");
+            }
+            return windows[(int) (position / windowSize)].get((int) (position % windowSize));
+        }
+
+        /**
+         * This method reads a big-endian int.
+         * @param position      The position of the first byte in the file.
+         * @return              The int.
+         * @throws IOException  If the file ends before the int does.
+         */
+        int getInt(long position) throws IOException {
+            return (int) getBytes(position, 4);
+        }
+
+        /**
+         * This method reads a big-endian long.
+         * @param position      The position of the first byte in the file.
+         * @return              The long.
+         * @throws IOException  If the file ends before the long does.
+         */
+        long getLong(long position) throws IOException {
+            return getBytes(position, 8);
+        }
+
+        /**
+         * This method reads a varint, as written by writeVarLong().
+         * @param position      The position of the first byte in the file.
+         * @return              The value.
+         * @throws IOException  If the file ends before the varint does, or it is longer than
+         * writeVarLong() would have written it.
+         */
+        long getVarLong(long position) throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 63; shift += 7) {
+                int b = get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    if (shift > 0 && b == 0) {
+                        throw new IOException("Packed Huffman file is malformed.");
+                    }
+                    return value;
+                }
+            }
+            throw new IOException("Packed Huffman file is malformed.");
+        }
+
+        /**
+         * This method reads a header stored as its length and bytes.
+         * @param position      The position of the length in the file.
+         * @return              The header bytes, which follow the length.
+         * @throws IOException  If the file ends before the header does.
+         */
+        byte[] getHeader(long position) throws IOException {
+            int headerSize = getInt(position);
+            if (headerSize < 0 || position + 4 + headerSize > size) {
+                throw new IOException("Packed Huffman file is truncated.");
+            }
+            byte[] header = new byte[headerSize];
+            for (int i = 0; i < headerSize; i++) {
+                header[i] = get(position + 4 + i);
+            }
+            return header;
+        }
+
+        /**
+         * This method reads a big-endian field of up to eight bytes.
+         * @param position      The position of the first byte in the file.
+         * @param count         The number of bytes in the field.
+         * @return              The field, right-aligned.
+         * @throws IOException  If the file ends before the field does.
+         */
+        private long getBytes(long position, int count) throws IOException {
+            if (position < 0 || position + count > size) {
+                throw new IOException("Packed Huffman file is truncated.");
+            }
+            int window = (int) (position / windowSize);
+            int index = (int) (position % windowSize);
+            if (index + count <= windows[window].limit()) {
+                return count == 8 ? windows[window].getLong(index)
+                    : windows[window].getInt(index);
+            }
+            long value = 0;
+            for (int i = 0; i < count; i++) {
+                value = (value << 8) | (get(position + i) & 0xFF);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class decodes the phrases of a packed file on a ForkJoinPool. Phrases that were written
+ * with checkpoints are split at each checkpoint, and every piece is decoded as a separate task
+ * straight into its place in the phrase's output, since the checkpoint gives both the bit at
+ * which the piece starts and the number of symbols that come before it. Phrases without
+ * checkpoints are decoded whole, one task per phrase. A file whose chunks carry selectors is
+ * decoded with one of several tables, each piece using the table its selector names.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class ParallelHuffmanDecoder {
+
+    private final HuffmanDecodeTable[] tables;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor for the parallel decoder.
+     * @param table     The decode table; it is only read, so it is shared.
+     * @param pool      The pool on which the pieces are decoded.
+     */
+    public ParallelHuffmanDecoder(HuffmanDecodeTable table, ForkJoinPool pool) {
+        this(new HuffmanDecodeTable[] {table}, pool);
+    }
+
+    /**
+     * Constructor for the parallel decoder of a file with selectors.
+     * @param tables    The decode tables, in selector order; they are only read, so they are
+     * shared.
+     * @param pool      The pool on which the pieces are decoded.
+     */
+    public ParallelHuffmanDecoder(HuffmanDecodeTable[] tables, ForkJoinPool pool) {
+        this.tables = tables;
+        this.pool = pool;
+    }
+
+    /**
+     * This method decodes every phrase of a packed file.
+     * @param file      The packed file.
+     * @return          The decoded phrases, or an error message for each phrase that could
+     * not be decoded.
+     */
+    public StringBuilder[] decode(PackedHuffmanFile file) {
+        int phraseCount = file.getPhraseCount();
+
+        // Number the pieces of all phrases in one sequence
+        int[] firstPiece = new int[phraseCount + 1];
+        for (int i = 0; i < phraseCount; i++) {
+            long[] symbolOffsets = file.getSymbolOffsets(i);
+            int pieces = symbolOffsets == null ? 1 : symbolOffsets.length - 1;
+            firstPiece[i + 1] = firstPiece[i] + pieces;
+        }
+        int[] piecePhrase = new int[firstPiece[phraseCount]];
+        for (int i = 0; i < phraseCount; i++) {
+            for (int j = firstPiece[i]; j < firstPiece[i + 1]; j++) {
+                piecePhrase[j] = i;
+            }
+        }
+
+        // Allocate the output of each phrase that has checkpoints, once they are checked
+        char[][] decoded = new char[phraseCount][];
+        boolean[] failed = new boolean[phraseCount];
+        for (int i = 0; i < phraseCount; i++) {
+            long[] symbolOffsets = file.getSymbolOffsets(i);
+            if (symbolOffsets == null) {
+                continue;
+            } else if (file.hasValidCheckpoints(i)) {
+                decoded[i] = new char[(int) symbolOffsets[symbolOffsets.length - 1]];
+            } else {
+                failed[i] = true;
+            }
+        }
+
+        // Decode every piece in parallel
+        StringBuilder[] output = new StringBuilder[phraseCount];
+        pool.invoke(new DecodeTask(file, firstPiece, piecePhrase, decoded, output,
+            failed, 0, piecePhrase.length));
+
+        for (int i = 0; i < phraseCount; i++) {
+            if (failed[i]) {
+                output[i] = new StringBuilder(Lab3.DECODE_ERROR);
+            } else if (decoded[i] != null) {
+                output[i] = new StringBuilder(decoded[i].length).append(decoded[i]);
+            }
+        }
+        return output;
+    }
+
+    /**
+     * This class is the fork/join task that decodes a range of pieces, splitting the range in
+     * half until a single piece is left.
+     */
+    private class DecodeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final PackedHuffmanFile file;
+        private final int[] firstPiece;
+        private final int[] piecePhrase;
+        private final char[][] decoded;
+        private final StringBuilder[] output;
+        private final boolean[] failed;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructor for the task.
+         * @param file          The packed file.
+         * @param firstPiece    The number of the first piece of each phrase.
+         * @param piecePhrase   The phrase that each piece belongs to.
+         * @param decoded       The output arrays of the phrases with checkpoints.
+         * @param output        Array receiving the phrases without checkpoints.
+         * @param failed        Array in which phrases that cannot be decoded are marked.
+         * @param from          The first piece to decode.
+         * @param to            One past the last piece to decode.
+         */
+        DecodeTask(PackedHuffmanFile file, int[] firstPiece, int[] piecePhrase,
+            char[][] decoded, StringBuilder[] output, boolean[] failed, int from,
+            int to) {
+            this.file = file;
+            this.firstPiece = firstPiece;
+            this.piecePhrase = piecePhrase;
+            this.decoded = decoded;
+            this.output = output;
+            this.failed = failed;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * This method decodes the pieces, or splits the range between two subtasks.
+         */
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                    new DecodeTask(file, firstPiece, piecePhrase, decoded, output,
+                        failed, from, middle),
+                    new DecodeTask(file, firstPiece, piecePhrase, decoded, output,
+                        failed, middle, to));
+                return;
+            }
+
+            // Decode a single piece; base case
+            for (int j = from; j < to; j++) {
+                int phrase = piecePhrase[j];
+                long[] symbolOffsets = file.getSymbolOffsets(phrase);
+                if (symbolOffsets == null) {
+                    output[phrase] = Lab3.decodeHuffman(tables[0], file.reader(phrase));
+                    continue;
+                } else if (decoded[phrase] == null) {
+                    continue; // The checkpoints are not consistent
+                }
+
+                // Decode from this checkpoint to the next one
+                int piece = j - firstPiece[phrase];
+                long[] chunkOffsets = file.getChunkOffsets(phrase);
+                long toBit = piece + 1 < chunkOffsets.length
+                    ? chunkOffsets[piece + 1] : file.getBitLength(phrase);
+                int start = (int) symbolOffsets[piece];
+                int end = (int) symbolOffsets[piece + 1];
+                byte[] selectors = file.getSelectors(phrase);
+                int selector = selectors == null ? 0 : selectors[piece] & 0xFF;
+                if (selector >= tables.length) {
+                    failed[phrase] = true;
+                    continue;
+                }
+                int count = tables[selector].decode(
+                    file.reader(phrase, chunkOffsets[piece], toBit),
+                    decoded[phrase], start, end);
+                if (count != end - start) {
+                    failed[phrase] = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class encodes phrases on a ForkJoinPool. Each phrase is cut into chunks of a fixed
+ * number of symbols, and every chunk of every phrase is handled as a separate task using the
+ * shared codebook. A first pass counts the bits of each chunk; their running totals give the bit
+ * offset at which each chunk starts, and a second pass encodes each chunk straight into its
+ * phrase's output at that offset. Neighbouring chunks only meet in the byte where one ends and
+ * the next starts, which is merged once the tasks are done. The output is identical to encoding
+ * each phrase in a single pass.
+ *
+ * The encoder can also be given several codebooks, such as those trained by BlockCodebooks.
+ * Each chunk is then encoded with whichever codebook codes it in the fewest bits, and the
+ * choice is recorded as the chunk's selector.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class ParallelHuffmanEncoder {
+
+    /**
+     * Default number of symbols in a chunk.
+     */
+    static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private final HuffmanCodebook[] codebooks;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    /**
+     * Constructor for the parallel encoder.
+     * @param codebook      The compiled Huffman codes; it is only read, so it is shared.
+     * @param pool          The pool on which the chunks are encoded.
+     * @param chunkSize     The number of symbols in each chunk.
+     */
+    public ParallelHuffmanEncoder(HuffmanCodebook codebook, ForkJoinPool pool,
+        int chunkSize) {
+        this(new HuffmanCodebook[] {codebook}, pool, chunkSize);
+    }
+
+    /**
+     * Constructor for the parallel encoder with a choice of codebooks for each chunk.
+     * @param codebooks     The codebooks, in selector order; they are only read, so they are
+     * shared.
+     * @param pool          The pool on which the chunks are encoded.
+     * @param chunkSize     The number of symbols in each chunk.
+     */
+    public ParallelHuffmanEncoder(HuffmanCodebook[] codebooks, ForkJoinPool pool,
+        int chunkSize) {
+        this.codebooks = codebooks;
+        this.pool = pool;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * This method encodes a set of phrases as packed bits in chunks, and records where each
+     * chunk starts, the checkpoint at its start and the codebook it was encoded with, as far
+     * as they are wanted.
+     * @param phrases       The clear text phrases.
+     * @param chunkOffsets  Array receiving, for each phrase, the bit offset at which each of
+     * its chunks starts. May be null if the offsets are not needed.
+     * @param symbolOffsets Array receiving, for each phrase, the number of symbols encoded
+     * before each chunk, followed by the total for the phrase. May be null if the offsets are
+     * not needed.
+     * @param selectors     Array receiving, for each phrase, the codebook of each chunk. May be
+     * null if the selectors are not needed.
+     * @return              The encoded phrases.
+     */
+    public BitWriter[] encode(String[] phrases, long[][] chunkOffsets,
+        long[][] symbolOffsets, byte[][] selectors) {
+
+        // Number the chunks of all phrases in one sequence
+        int[] firstChunk = new int[phrases.length + 1];
+        for (int i = 0; i < phrases.length; i++) {
+            int chunks = Math.max(1,
+                (phrases[i].length() + chunkSize - 1) / chunkSize);
+            firstChunk[i + 1] = firstChunk[i] + chunks;
+        }
+        int[] chunkPhrase = new int[firstChunk[phrases.length]];
+        for (int i = 0; i < phrases.length; i++) {
+            for (int j = firstChunk[i]; j < firstChunk[i + 1]; j++) {
+                chunkPhrase[j] = i;
+            }
+        }
+
+        // Count the bits of every chunk in parallel, choosing its codebook
+        int chunkCount = chunkPhrase.length;
+        long[] chunkStarts = new long[chunkCount];
+        long[] chunkBits = new long[chunkCount];
+        int[] pieceSymbols = new int[chunkCount];
+        byte[] pieceSelectors = new byte[chunkCount];
+        BitWriter[] pieces = new BitWriter[chunkCount];
+        pool.invoke(new EncodeTask(phrases, firstChunk, chunkPhrase, null, chunkStarts,
+            chunkBits, pieceSymbols, pieceSelectors, pieces, 0, chunkCount));
+
+        // Add up the bits to find where each chunk starts, and make room for each phrase;
+        // the writers are made here, before any bits are written to the shared arrays
+        byte[][] packed = new byte[phrases.length][];
+        long[] phraseBits = new long[phrases.length];
+        for (int i = 0; i < phrases.length; i++) {
+            for (int j = firstChunk[i]; j < firstChunk[i + 1]; j++) {
+                chunkStarts[j] = phraseBits[i];
+                phraseBits[i] += chunkBits[j];
+            }
+            packed[i] = new byte[(int) ((phraseBits[i] + 7) >>> 3) + 8];
+            for (int j = firstChunk[i]; j < firstChunk[i + 1]; j++) {
+                pieces[j] = new BitWriter(packed[i], chunkStarts[j]);
+            }
+        }
+
+        // Encode every chunk in parallel, straight into its phrase at its offset
+        pool.invoke(new EncodeTask(phrases, firstChunk, chunkPhrase, packed, chunkStarts,
+            chunkBits, pieceSymbols, pieceSelectors, pieces, 0, chunkCount));
+
+        // Merge the bytes where chunks meet, from the last chunk of each phrase back to the
+        // first, and record where each one starts
+        BitWriter[] encoded = new BitWriter[phrases.length];
+        for (int i = 0; i < phrases.length; i++) {
+            int chunks = firstChunk[i + 1] - firstChunk[i];
+            for (int j = firstChunk[i + 1] - 1; j >= firstChunk[i]; j--) {
+                pieces[j].mergeLastByte();
+                pieces[j] = null;
+            }
+            long[] symbols = new long[chunks + 1];
+            for (int j = 0; j < chunks; j++) {
+                symbols[j + 1] = symbols[j] + pieceSymbols[firstChunk[i] + j];
+            }
+            encoded[i] = new BitWriter(packed[i], phraseBits[i]);
+            if (chunkOffsets != null) {
+                chunkOffsets[i] = Arrays.copyOfRange(chunkStarts, firstChunk[i],
+                    firstChunk[i + 1]);
+            }
+            if (symbolOffsets != null) {
+                symbolOffsets[i] = symbols;
+            }
+            if (selectors != null) {
+                selectors[i] = Arrays.copyOfRange(pieceSelectors, firstChunk[i],
+                    firstChunk[i + 1]);
+            }
+        }
+
+        return encoded;
+    }
+
+    /**
+     * This class is the fork/join task that handles a range of chunks, splitting the range in
+     * half until a single chunk is left. Without output arrays it counts the bits of each chunk
+     * and chooses its codebook; with them it encodes each chunk at its offset.
+     */
+    private class EncodeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String[] phrases;
+        private final int[] firstChunk;
+        private final int[] chunkPhrase;
+        private final byte[][] packed;
+        private final long[] chunkStarts;
+        private final long[] chunkBits;
+        private final int[] pieceSymbols;
+        private final byte[] pieceSelectors;
+        private final BitWriter[] pieces;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructor for the task.
+         * @param phrases       The clear text phrases.
+         * @param firstChunk    The number of the first chunk of each phrase.
+         * @param chunkPhrase   The phrase that each chunk belongs to.
+         * @param packed        The output array of each phrase, or null to count the bits.
+         * @param chunkStarts   The bit offset of each chunk within its phrase.
+         * @param chunkBits     Array receiving the number of bits in each chunk.
+         * @param pieceSymbols  Array receiving the number of symbols in each chunk.
+         * @param pieceSelectors Array receiving the codebook chosen for each chunk.
+         * @param pieces        The writer of each chunk, once the bits have been counted.
+         * @param from          The first chunk to handle.
+         * @param to            One past the last chunk to handle.
+         */
+        EncodeTask(String[] phrases, int[] firstChunk, int[] chunkPhrase, byte[][] packed,
+            long[] chunkStarts, long[] chunkBits, int[] pieceSymbols, byte[] pieceSelectors,
+            BitWriter[] pieces, int from, int to) {
+            this.phrases = phrases;
+            this.firstChunk = firstChunk;
+            this.chunkPhrase = chunkPhrase;
+            this.packed = packed;
+            this.chunkStarts = chunkStarts;
+            this.chunkBits = chunkBits;
+            this.pieceSymbols = pieceSymbols;
+            this.pieceSelectors = pieceSelectors;
+            this.pieces = pieces;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * This method handles the chunks, or splits the range between two subtasks.
+         */
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                    new EncodeTask(phrases, firstChunk, chunkPhrase, packed, chunkStarts,
+                        chunkBits, pieceSymbols, pieceSelectors, pieces, from, middle),
+                    new EncodeTask(phrases, firstChunk, chunkPhrase, packed, chunkStarts,
+                        chunkBits, pieceSymbols, pieceSelectors, pieces, middle, to));
+                return;
+            }
+
+            // Count or encode a single chunk; base case
+            for (int j = from; j < to; j++) {
+                String phrase = phrases[chunkPhrase[j]];
+                int start = (j - firstChunk[chunkPhrase[j]]) * chunkSize;
+                int end = Math.min(phrase.length(), start + chunkSize);
+                if (packed == null) {
+                    int selector = cheapestCodebook(phrase, start, end);
+                    pieceSelectors[j] = (byte) selector;
+                    chunkBits[j] = codebooks[selector].getBitLength(phrase, start, end);
+                } else {
+                    pieceSymbols[j] = codebooks[pieceSelectors[j]].encode(phrase, start,
+                        end, pieces[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method finds the codebook that encodes part of a phrase in the fewest bits.
+     * @param phrase    The clear text phrase.
+     * @param start     Index of the first character of the part.
+     * @param end       Index one past the last character of the part.
+     * @return          The index of the codebook; the first on ties.
+     */
+    private int cheapestCodebook(String phrase, int start, int end) {
+        if (codebooks.length == 1) {
+            return 0;
+        }
+        int best = 0;
+        long bestBits = Long.MAX_VALUE;
+        for (int t = 0; t < codebooks.length; t++) {
+            long bits = codebooks[t].getBitLength(phrase, start, end);
+            if (bits < bestBits) {
+                bestBits = bits;
+                best = t;
+            }
+        }
+        return best;
+    }
+}
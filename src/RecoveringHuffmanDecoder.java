@@ -0,0 +1,174 @@
+import java.util.List;
+
+/**
+ * This class decodes damaged phrases without giving up on them. Where the plain decoder
+ * replaces a whole phrase with an error message, this decoder keeps every symbol it can decode
+ * and adds a DecodeError record for each place it could not, then carries on.
+ *
+ * Decoding runs as a small state machine. In the DECODING state each code is looked up and
+ * appended as usual. When the next bits match no code, an error is recorded and the decoder
+ * moves to the RESYNCING state, in which it drops one bit at a time until a code matches again;
+ * Huffman codes usually fall back into step within a few symbols. A phrase or chunk that ends
+ * part way through a code is recorded as truncated. Where a packed file has a chunk index, each
+ * chunk start is a sync point: an error ends the chunk, decoding picks up exactly at the next
+ * one, and a checkpoint's symbol count shows whether a chunk decoded to the right length.
+ * Non-binary characters in a textual phrase are recorded and skipped.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class RecoveringHuffmanDecoder {
+
+    /**
+     * State in which codes are being decoded.
+     */
+    private static final int DECODING = 0;
+
+    /**
+     * State in which bits are dropped until a code matches.
+     */
+    private static final int RESYNCING = 1;
+
+    private final HuffmanDecodeTable[] tables;
+
+    /**
+     * Constructor for the decoder.
+     * @param table     The decode table.
+     */
+    public RecoveringHuffmanDecoder(HuffmanDecodeTable table) {
+        this(new HuffmanDecodeTable[] {table});
+    }
+
+    /**
+     * Constructor for the decoder of a file with selectors.
+     * @param tables    The decode tables, in selector order.
+     */
+    public RecoveringHuffmanDecoder(HuffmanDecodeTable[] tables) {
+        this.tables = tables;
+    }
+
+    /**
+     * This method decodes a phrase of '0'/'1' characters.
+     * @param coded     The encoded phrase.
+     * @param phrase    The index of the phrase, for the error records.
+     * @param errors    List to which an error record is added for each problem found.
+     * @return          The symbols that could be decoded.
+     */
+    public StringBuilder decode(String coded, int phrase, List<DecodeError> errors) {
+
+        // Pack the binary characters, noting where any others were
+        BitWriter bits = new BitWriter(coded.length() / 8 + 1);
+        for (int i = 0; i < coded.length(); i++) {
+            char c = coded.charAt(i);
+            if (c == '0' || c == '1') {
+                bits.writeBits(c - '0', 1);
+            } else {
+                errors.add(new DecodeError(phrase, bits.getBitLength(),
+                    DecodeError.INVALID_CHARACTER));
+            }
+        }
+
+        StringBuilder decoded = new StringBuilder();
+        decodeRange(new BitReader(bits.toByteArray(), bits.getBitLength()), 0, tables[0],
+            false, phrase, decoded, errors);
+        return decoded;
+    }
+
+    /**
+     * This method decodes one phrase of a packed file, resuming at the next chunk after any
+     * error if the file has a chunk index.
+     * @param file      The packed file.
+     * @param phrase    The index of the phrase.
+     * @param errors    List to which an error record is added for each problem found.
+     * @return          The symbols that could be decoded.
+     */
+    public StringBuilder decode(PackedHuffmanFile file, int phrase, List<DecodeError> errors) {
+        StringBuilder decoded = new StringBuilder();
+        long[] chunkOffsets = file.getChunkOffsets(phrase);
+        if (chunkOffsets == null) {
+            decodeRange(file.reader(phrase), 0, tables[0], false, phrase, decoded, errors);
+            return decoded;
+        }
+
+        long[] symbolOffsets = file.getSymbolOffsets(phrase);
+        byte[] selectors = file.getSelectors(phrase);
+        for (int chunk = 0; chunk < chunkOffsets.length; chunk++) {
+            long fromBit = chunkOffsets[chunk];
+            long toBit = chunk + 1 < chunkOffsets.length
+                ? chunkOffsets[chunk + 1] : file.getBitLength(phrase);
+            if (fromBit < 0 || fromBit > toBit || toBit > file.getBitLength(phrase)) {
+                errors.add(new DecodeError(phrase, Math.max(0, fromBit),
+                    DecodeError.INVALID_CHECKPOINT));
+                continue;
+            }
+            int selector = selectors == null ? 0 : selectors[chunk] & 0xFF;
+            if (selector >= tables.length) {
+                errors.add(new DecodeError(phrase, fromBit, DecodeError.INVALID_SELECTOR));
+                continue;
+            }
+
+            int before = decoded.length();
+            boolean clean = decodeRange(file.reader(phrase, fromBit, toBit), fromBit,
+                tables[selector], true, phrase, decoded, errors);
+            if (clean && symbolOffsets != null && decoded.length() - before
+                != symbolOffsets[chunk + 1] - symbolOffsets[chunk]) {
+                errors.add(new DecodeError(phrase, toBit, DecodeError.WRONG_SYMBOL_COUNT));
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * This method decodes a range of bits.
+     * @param reader        The reader over the range.
+     * @param fromBit       The bit of the phrase at which the range starts.
+     * @param table         The decode table.
+     * @param stopAtError   Whether to give up on the rest of the range at the first error,
+     * as when the next sync point is close by, rather than resynchronizing within it.
+     * @param phrase        The index of the phrase, for the error records.
+     * @param decoded       The output, to which the decoded symbols are appended.
+     * @param errors        List to which an error record is added for each problem found.
+     * @return              True if the range decoded without error.
+     */
+    private static boolean decodeRange(BitReader reader, long fromBit,
+        HuffmanDecodeTable table, boolean stopAtError, int phrase, StringBuilder decoded,
+        List<DecodeError> errors) {
+        int maxLength = table.getMaxLength();
+        long endBit = fromBit + reader.getBitsRemaining();
+        int state = DECODING;
+        boolean clean = true;
+
+        while (reader.getBitsRemaining() > 0) {
+            int entry = table.lookup(reader.peekBits(maxLength));
+            int codeLen = HuffmanDecodeTable.lengthOf(entry);
+
+            if (codeLen > reader.getBitsRemaining()) {
+                if (state == DECODING) {
+                    errors.add(new DecodeError(phrase, endBit - reader.getBitsRemaining(),
+                        DecodeError.TRUNCATED_CODE));
+                }
+                return false;
+            }
+
+            if (codeLen == 0) {
+                if (state == DECODING) {
+                    errors.add(new DecodeError(phrase, endBit - reader.getBitsRemaining(),
+                        DecodeError.INVALID_CODE));
+                    clean = false;
+                    if (stopAtError) {
+                        return false;
+                    }
+                    state = RESYNCING;
+                }
+                reader.skipBits(1);
+                continue;
+            }
+
+            state = DECODING;
+            reader.skipBits(codeLen);
+            decoded.append(HuffmanDecodeTable.symbolOf(entry));
+        }
+
+        return clean;
+    }
+}
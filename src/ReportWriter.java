@@ -0,0 +1,140 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class writes the output report. The file is opened once for the whole run, with an
+ * explicit character set, and everything written to it is buffered. Optionally, the writes are
+ * handed to a background thread so the caller does not wait on the disk.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class ReportWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int QUEUE_SIZE = 1024;
+
+    // Marks the end of the queue for the background thread
+    private static final String END = new String();
+
+    private final Writer writer;
+    private final BlockingQueue<String> queue;
+    private final Thread writerThread;
+    private volatile IOException failure = null;
+    private long writeCount = 0;
+    private long charCount = 0;
+
+    /**
+     * Constructor for the report writer. Any existing file is replaced.
+     * @param outputFile    The file to which the report is written.
+     * @param charset       The character set of the report.
+     * @param async         Whether to write from a background thread.
+     * @throws IOException  If the file cannot be opened.
+     */
+    public ReportWriter(File outputFile, Charset charset, boolean async)
+        throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(outputFile), charset), BUFFER_SIZE);
+
+        if (async) {
+            this.queue = new ArrayBlockingQueue<String>(QUEUE_SIZE);
+            this.writerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drainQueue();
+                }
+            }, "report-writer");
+            this.writerThread.setDaemon(true);
+            this.writerThread.start();
+        } else {
+            this.queue = null;
+            this.writerThread = null;
+        }
+    }
+
+    /**
+     * This method adds a string to the report.
+     * @param str           The string to be written.
+     * @throws IOException  If an earlier or current write failed.
+     */
+    public void write(String str) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        writeCount++;
+        charCount += str.length();
+        if (queue == null) {
+            writer.write(str);
+            return;
+        }
+        try {
+            queue.put(str);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted writing report.");
+        }
+    }
+
+    /**
+     * Getter method for the number of writes.
+     * @return      The number of strings added to the report.
+     */
+    public long getWriteCount() {
+        return this.writeCount;
+    }
+
+    /**
+     * Getter method for the size of the report.
+     * @return      The number of characters added to the report, which is also its size in
+     * bytes for a single-byte character set.
+     */
+    public long getCharCount() {
+        return this.charCount;
+    }
+
+    /**
+     * This method writes out anything still buffered or queued and closes the file.
+     * @throws IOException  If any write failed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (writerThread != null) {
+            try {
+                queue.put(END);
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted closing report.");
+            }
+        }
+        writer.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * This method is run by the background thread; it writes queued strings until the end
+     * marker is reached.
+     */
+    private void drainQueue() {
+        try {
+            String str;
+            while ((str = queue.take()) != END) {
+
+                // Keep taking after a failure so the caller never blocks
+                if (failure == null) {
+                    try {
+                        writer.write(str);
+                    } catch (IOException ioExc) {
+                        failure = ioExc;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("Interrupted writing report.");
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * This interface records the phases and totals of a run as profiler events. Its one
+ * implementation, HuffmanEvents, records Flight Recorder events; it is in the separate jfr
+ * source root, since the jdk.jfr classes are not part of the Java 8 platform, and RunMetrics
+ * loads it by name so that the program still builds and runs without it.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public interface RunEvents {
+
+    /**
+     * This method starts the event for a phase.
+     * @param phase     The name of the phase.
+     * @return          The event, to be passed to endPhase().
+     */
+    Object beginPhase(String phase);
+
+    /**
+     * This method ends the event for a phase and records it.
+     * @param event     The event returned by beginPhase().
+     */
+    void endPhase(Object event);
+
+    /**
+     * This method records the totals of a run.
+     * @param metrics   The metrics of the run.
+     */
+    void commitRun(RunMetrics metrics);
+}
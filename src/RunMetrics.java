@@ -0,0 +1,207 @@
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class measures a run: the time spent in each phase, counts of the bytes and symbols
+ * processed, and how close the codes come to the entropy of the frequency table. Phases follow
+ * one another, so starting a phase ends the one before it; a phase that is entered more than
+ * once accumulates its time.
+ *
+ * Every phase and the run totals are also recorded as Flight Recorder events (see
+ * HuffmanEvents) when the JVM has Flight Recorder and the jfr source root has been compiled.
+ * The summary can be written as a file of "name=value" lines for other programs to read.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class RunMetrics {
+
+    static final String BYTES_IN = "bytesIn";
+    static final String BYTES_OUT = "bytesOut";
+    static final String SYMBOLS_ENCODED = "symbolsEncoded";
+    static final String BITS_ENCODED = "bitsEncoded";
+    static final String SYMBOLS_DECODED = "symbolsDecoded";
+    static final String BITS_DECODED = "bitsDecoded";
+    static final String DECODE_ERRORS = "decodeErrors";
+    static final String REPORT_WRITES = "reportWrites";
+    static final String REQUESTS = "requests";
+
+    private static final RunEvents EVENTS = loadEvents();
+
+    // Time and number of entries of each phase, in the order first entered
+    private final Map<String, long[]> phases = new LinkedHashMap<String, long[]>();
+    private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+    private String currentPhase = null;
+    private long phaseStart;
+    private Object phaseEvent = null;
+    private double entropy = 0;
+    private double averageCodeLength = 0;
+
+    /**
+     * This method ends the current phase, if any, and starts the next one.
+     * @param phase     The name of the phase.
+     */
+    public void phase(String phase) {
+        endPhase();
+        currentPhase = phase;
+        if (EVENTS != null) {
+            phaseEvent = EVENTS.beginPhase(phase);
+        }
+        phaseStart = System.nanoTime();
+    }
+
+    /**
+     * This method ends the current phase, if any.
+     */
+    public void endPhase() {
+        if (currentPhase == null) {
+            return;
+        }
+        long elapsed = System.nanoTime() - phaseStart;
+        if (EVENTS != null) {
+            EVENTS.endPhase(phaseEvent);
+        }
+
+        long[] totals = phases.get(currentPhase);
+        if (totals == null) {
+            totals = new long[2];
+            phases.put(currentPhase, totals);
+        }
+        totals[0] += elapsed;
+        totals[1]++;
+        currentPhase = null;
+    }
+
+    /**
+     * This method adds to a counter.
+     * @param counter   The name of the counter.
+     * @param amount    The amount to be added.
+     */
+    public void add(String counter, long amount) {
+        counters.put(counter, get(counter) + amount);
+    }
+
+    /**
+     * Getter method for a counter.
+     * @param counter   The name of the counter.
+     * @return          The count, which is 0 if nothing was added.
+     */
+    public long get(String counter) {
+        Long count = counters.get(counter);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * This method records the entropy and average code length of the frequency table. The codes
+     * must already have been assigned.
+     * @param freqTable     The frequency table.
+     */
+    public void setCodeStatistics(FreqTreeNode[] freqTable) {
+        this.entropy = entropy(freqTable);
+        this.averageCodeLength = CodeLengths.averageLength(freqTable,
+            CodeLengths.fromTable(freqTable));
+    }
+
+    /**
+     * Getter method for the entropy of the frequency table.
+     * @return      The entropy, in bits per symbol.
+     */
+    public double getEntropy() {
+        return this.entropy;
+    }
+
+    /**
+     * Getter method for the average code length over the frequency table.
+     * @return      The average length, in bits per symbol.
+     */
+    public double getAverageCodeLength() {
+        return this.averageCodeLength;
+    }
+
+    /**
+     * This method computes the Shannon entropy of a frequency table, the fewest bits per symbol
+     * that any code could average.
+     * @param freqTable     The frequency table; null entries are skipped.
+     * @return              The entropy, in bits per symbol.
+     */
+    public static double entropy(FreqTreeNode[] freqTable) {
+        long total = 0;
+        for (FreqTreeNode node : freqTable) {
+            if (node != null) {
+                total += node.getFrequency();
+            }
+        }
+
+        double entropy = 0;
+        for (FreqTreeNode node : freqTable) {
+            if (node != null && node.getFrequency() > 0) {
+                double p = (double) node.getFrequency() / total;
+                entropy -= p * Math.log(p) / Math.log(2);
+            }
+        }
+        return entropy;
+    }
+
+    /**
+     * This method ends the current phase and records the totals of the run as a Flight
+     * Recorder event.
+     */
+    public void finish() {
+        endPhase();
+        if (EVENTS != null) {
+            EVENTS.commitRun(this);
+        }
+    }
+
+    /**
+     * This method writes the summary of the run, one "name=value" line per measurement.
+     * @param filename      The name of the file to be written.
+     * @throws IOException  If the file cannot be written.
+     */
+    public void writeSummary(String filename) throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(filename), HuffmanStream.CHARSET)));
+        try {
+            for (Map.Entry<String, long[]> phase : phases.entrySet()) {
+                out.printf(Locale.ROOT, "phase.%s.millis=%.3f%n", phase.getKey(),
+                    phase.getValue()[0] / 1e6);
+                out.printf(Locale.ROOT, "phase.%s.count=%d%n", phase.getKey(),
+                    phase.getValue()[1]);
+            }
+            for (Map.Entry<String, Long> counter : counters.entrySet()) {
+                out.printf(Locale.ROOT, "%s=%d%n", counter.getKey(), counter.getValue());
+            }
+
+            // Compare the bits actually used with the table's ideal
+            out.printf(Locale.ROOT, "table.entropy=%.6f%n", entropy);
+            out.printf(Locale.ROOT, "table.averageCodeLength=%.6f%n", averageCodeLength);
+            if (get(SYMBOLS_ENCODED) > 0) {
+                out.printf(Locale.ROOT, "encoded.bitsPerSymbol=%.6f%n",
+                    (double) get(BITS_ENCODED) / get(SYMBOLS_ENCODED));
+            }
+            if (out.checkError()) {
+                throw new IOException("Error writing " + filename);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * This method loads the Flight Recorder events, if the JVM has Flight Recorder and
+     * HuffmanEvents has been compiled.
+     * @return      The events, or null if they cannot be recorded.
+     */
+    private static RunEvents loadEvents() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (RunEvents) Class.forName("HuffmanEvents").getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class reads and writes an archive of Huffman-encoded phrases in which any one phrase can
+ * be decoded without reading the others. The phrases are stored as packed bits, back to back,
+ * and an index gives the bit offset at which each one starts. The index is held in the
+ * Elias-Fano encoding, so it takes about 2 + log2(average phrase bits) bits per phrase and can
+ * be kept in memory for millions of phrases. Opening an archive reads only its header and
+ * index; each phrase is then read with a single positional read of the bytes that hold it.
+ *
+ * The file layout is:
+ *   int    magic number "HUFS"
+ *   int    flags
+ *   int    number of phrases
+ *   if FLAG_CODE_LENGTHS is set:
+ *     int    number of bytes in the code length header
+ *     byte[] the header, as written by CodeLengths.toHeader()
+ *   if FLAG_TOKENS is set:
+ *     int    number of bytes in the token header
+ *     byte[] the header, as written by TokenAlphabet.toHeader()
+ *   int    number of bytes in the offset index
+ *   byte[] the offset index, as written by EliasFanoSequence.write(): the bit offset at which
+ *          each phrase starts, followed by the total number of bits
+ *   byte[] the packed bits of every phrase, padded with zeros to a whole byte at the end
+ *
+ * An open archive may be read by several threads at once.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class SeekableHuffmanFile implements Closeable {
+
+    static final int MAGIC = 0x48554653;
+
+    /**
+     * Flag set when the file holds the code lengths of a canonical code, from which it can be
+     * decoded without the frequency table.
+     */
+    static final int FLAG_CODE_LENGTHS = 4;
+
+    /**
+     * Flag set when the phrases are cut into letters and tokens, and the file holds the text of
+     * each token.
+     */
+    static final int FLAG_TOKENS = 16;
+
+    private final FileChannel channel;
+    private final byte[] codeLengths;
+    private final byte[] tokens;
+    private final EliasFanoSequence offsets;
+    private final long dataStart;
+
+    /**
+     * Constructor for an archive whose header and index have been read.
+     * @param channel       The open file.
+     * @param codeLengths   The code length header, or null if there is none.
+     * @param tokens        The token header, or null if there is none.
+     * @param offsets       The bit offset of each phrase, followed by the total.
+     * @param dataStart     The position in the file at which the packed bits start.
+     */
+    private SeekableHuffmanFile(FileChannel channel, byte[] codeLengths, byte[] tokens,
+        EliasFanoSequence offsets, long dataStart) {
+        this.channel = channel;
+        this.codeLengths = codeLengths;
+        this.tokens = tokens;
+        this.offsets = offsets;
+        this.dataStart = dataStart;
+    }
+
+    /**
+     * This method writes an archive.
+     * @param filename      The name of the file to be written.
+     * @param phrases       The packed bits of each phrase.
+     * @param codeLengths   The code length header, or null for none.
+     * @throws IOException  If the file cannot be written.
+     */
+    public static void write(String filename, BitWriter[] phrases, byte[] codeLengths)
+        throws IOException {
+        write(filename, phrases, codeLengths, null);
+    }
+
+    /**
+     * This method writes an archive of phrases cut into letters and tokens, along with the
+     * text of the tokens.
+     * @param filename      The name of the file to be written.
+     * @param phrases       The packed bits of each phrase.
+     * @param codeLengths   The code length header, or null for none.
+     * @param tokens        The token header written by TokenAlphabet.toHeader(), or null for
+     * none.
+     * @throws IOException  If the file cannot be written.
+     */
+    public static void write(String filename, BitWriter[] phrases, byte[] codeLengths,
+        byte[] tokens) throws IOException {
+
+        // Lay the phrases end to end and note where each one starts
+        long[] bitOffsets = new long[phrases.length + 1];
+        BitWriter data = new BitWriter();
+        for (int i = 0; i < phrases.length; i++) {
+            bitOffsets[i] = data.getBitLength();
+            data.append(phrases[i]);
+        }
+        bitOffsets[phrases.length] = data.getBitLength();
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(index);
+        EliasFanoSequence.encode(bitOffsets).write(indexOut);
+        indexOut.flush();
+
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(filename)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt((codeLengths != null ? FLAG_CODE_LENGTHS : 0)
+                | (tokens != null ? FLAG_TOKENS : 0));
+            out.writeInt(phrases.length);
+            if (codeLengths != null) {
+                out.writeInt(codeLengths.length);
+                out.write(codeLengths);
+            }
+            if (tokens != null) {
+                out.writeInt(tokens.length);
+                out.write(tokens);
+            }
+            out.writeInt(index.size());
+            index.writeTo(out);
+            out.write(data.toByteArray());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * This method opens an archive, reading its header and index.
+     * @param filename      The name of the file to be opened.
+     * @return              The open archive, which should be closed when done.
+     * @throws IOException  If the file cannot be read or is not an archive.
+     */
+    public static SeekableHuffmanFile open(String filename) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = readFully(channel, 0, 12);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a seekable Huffman file.");
+            }
+            int flags = header.getInt();
+            int phraseCount = header.getInt();
+            long position = 12;
+
+            // Read the code length and token headers, if there are any
+            byte[] codeLengths = null;
+            if ((flags & FLAG_CODE_LENGTHS) != 0) {
+                codeLengths = readHeader(channel, position);
+                position += 4 + codeLengths.length;
+            }
+            byte[] tokens = null;
+            if ((flags & FLAG_TOKENS) != 0) {
+                tokens = readHeader(channel, position);
+                position += 4 + tokens.length;
+            }
+
+            // Read the offset index, and check it covers the rest of the file
+            int indexSize = readFully(channel, position, 4).getInt();
+            position += 4;
+            if (indexSize < 0 || position + indexSize > channel.size()) {
+                throw new IOException("Seekable Huffman file is truncated.");
+            }
+            EliasFanoSequence offsets = EliasFanoSequence.read(
+                readFully(channel, position, indexSize));
+            position += indexSize;
+            if (offsets.size() != phraseCount + 1) {
+                throw new IOException("Seekable Huffman file index does not match its "
+                    + "phrases.");
+            }
+            if ((offsets.get(phraseCount) + 7) >>> 3 > channel.size() - position) {
+                throw new IOException("Seekable Huffman file is truncated.");
+            }
+
+            return new SeekableHuffmanFile(channel, codeLengths, tokens, offsets, position);
+        } catch (IOException ioExc) {
+            channel.close();
+            throw ioExc;
+        }
+    }
+
+    /**
+     * Getter method for the number of phrases.
+     * @return      The number of phrases in the archive.
+     */
+    public int getPhraseCount() {
+        return this.offsets.size() - 1;
+    }
+
+    /**
+     * Getter method for the code length header.
+     * @return      The header bytes, or null if the archive has none.
+     */
+    public byte[] getCodeLengths() {
+        return this.codeLengths;
+    }
+
+    /**
+     * Getter method for the token header.
+     * @return      The header bytes, or null if the archive has no tokens.
+     */
+    public byte[] getTokens() {
+        return this.tokens;
+    }
+
+    /**
+     * Getter method for the length of a phrase.
+     * @param index     The index of the phrase.
+     * @return          The number of bits in the phrase.
+     */
+    public long getBitLength(int index) {
+        return offsets.get(index + 1) - offsets.get(index);
+    }
+
+    /**
+     * This method reads the bytes that hold one phrase.
+     * @param index         The index of the phrase, from 0.
+     * @return              A BitReader positioned at the start of the phrase.
+     * @throws IOException  If the file cannot be read.
+     * @throws IndexOutOfBoundsException If there is no such phrase.
+     */
+    public BitReader reader(int index) throws IOException {
+        if (index < 0 || index >= getPhraseCount()) {
+            throw new IndexOutOfBoundsException("No phrase " + index + " in an archive of "
+                + getPhraseCount() + ".");
+        }
+        long fromBit = offsets.get(index);
+        long toBit = offsets.get(index + 1);
+        long firstByte = fromBit >>> 3;
+        int byteCount = (int) (((toBit + 7) >>> 3) - firstByte);
+
+        ByteBuffer bytes = readFully(channel, dataStart + firstByte, byteCount);
+        return new BitReader(bytes, 0, fromBit - (firstByte << 3), toBit - (firstByte << 3));
+    }
+
+    /**
+     * This method decodes one phrase, reading only the bytes that hold it.
+     * @param index         The index of the phrase, from 0.
+     * @param table         The decode table.
+     * @return              The decoded phrase, or an error message if it could not be decoded.
+     * @throws IOException  If the file cannot be read.
+     * @throws IndexOutOfBoundsException If there is no such phrase.
+     */
+    public StringBuilder decodePhrase(int index, HuffmanDecodeTable table) throws IOException {
+        return Lab3.decodeHuffman(table, reader(index));
+    }
+
+    /**
+     * This method closes the file.
+     * @throws IOException  If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * This method reads a header stored as its length and bytes.
+     * @param channel       The file.
+     * @param position      The position of the length.
+     * @return              The header bytes, which follow the length.
+     * @throws IOException  If the file cannot be read or ends too soon.
+     */
+    private static byte[] readHeader(FileChannel channel, long position) throws IOException {
+        int headerSize = readFully(channel, position, 4).getInt();
+        if (headerSize < 0 || position + 4 + headerSize > channel.size()) {
+            throw new IOException("Seekable Huffman file is truncated.");
+        }
+        byte[] header = new byte[headerSize];
+        readFully(channel, position + 4, headerSize).get(header);
+        return header;
+    }
+
+    /**
+     * This method reads a range of a file with positional reads, which do not move the
+     * channel's position and so may be made from several threads at once.
+     * @param channel       The file.
+     * @param position      The position of the first byte.
+     * @param count         The number of bytes.
+     * @return              A buffer holding the bytes, positioned at the first.
+     * @throws IOException  If the file cannot be read or ends too soon.
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int count)
+        throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(count);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Seekable Huffman file is truncated.");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,221 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts how often each symbol occurs in clear text, so that a frequency table can be
+ * fitted to real data instead of being written by hand. Raw bytes are counted first, since that
+ * is a single array increment per byte; the 256 byte counts are then folded into symbol counts
+ * using the same normalization as the clear text import (punctuation and whitespace removed,
+ * letters upper-cased).
+ *
+ * The byte counts are striped LongAdders, so any number of threads may call add() at once.
+ * Each call counts into local arrays first and touches the shared counters only once per byte
+ * value.
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class SymbolHistogram {
+
+    /**
+     * Number of bytes counted by one fork/join task.
+     */
+    static final int SEGMENT_SIZE = 1 << 20;
+
+    private final LongAdder[] byteCounts = new LongAdder[256];
+
+    /**
+     * Default constructor for an empty histogram.
+     */
+    public SymbolHistogram() {
+        for (int i = 0; i < byteCounts.length; i++) {
+            byteCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * This method counts a file in parallel. The file is memory-mapped a window at a time, and
+     * each window is split into segments that are counted as separate tasks and merged.
+     * @param in            The file containing the clear text.
+     * @param pool          The pool on which the segments are counted.
+     * @return              The histogram of the file.
+     * @throws IOException  If the file cannot be mapped.
+     */
+    public static SymbolHistogram count(FileChannel in, ForkJoinPool pool)
+        throws IOException {
+
+        SymbolHistogram histogram = new SymbolHistogram();
+        long size = in.size();
+
+        for (long position = 0; position < size;
+            position += HuffmanStream.MAP_WINDOW_SIZE) {
+            ByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position,
+                Math.min(HuffmanStream.MAP_WINDOW_SIZE, size - position));
+            histogram.addCounts(
+                pool.invoke(new CountTask(window, 0, window.limit())));
+        }
+        return histogram;
+    }
+
+    /**
+     * This method counts the bytes remaining in a buffer. It is safe to call from several
+     * threads at once. The buffer's position is not changed.
+     * @param data      The clear text bytes.
+     */
+    public void add(ByteBuffer data) {
+        addCounts(countBytes(data, data.position(), data.limit()));
+    }
+
+    /**
+     * This method folds the byte counts into counts of the normalized symbols.
+     * @return      The count of each symbol, indexed by character.
+     */
+    public long[] symbolCounts() {
+        long[] counts = new long[Character.MAX_VALUE + 1];
+
+        for (int b = 0; b < 256; b++) {
+            int entry = ClearTextNormalizer.lookup((byte) b);
+
+            // Bytes the charset does not define are removed, like punctuation
+            if (entry >= 0) {
+                counts[entry & 0xFFFF] += byteCounts[b].sum();
+                if (entry > Character.MAX_VALUE) {
+                    counts[entry >>> 16] += byteCounts[b].sum();
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * This method builds a frequency table holding every symbol that occurs. Counts are scaled
+     * down, if necessary, so that their total fits in the int frequency of the root node; no
+     * symbol that occurs is scaled below a frequency of 1.
+     * @return      The frequency table, in character order.
+     */
+    public FreqTreeNode[] toFreqTable() {
+        long[] counts = symbolCounts();
+        long total = 0;
+        int symbols = 0;
+        for (long count : counts) {
+            total += count;
+            if (count > 0) {
+                symbols++;
+            }
+        }
+
+        // Scale so the total, including the rounding up to 1, fits in an int
+        long divisor = 1;
+        while (total / divisor + symbols > Integer.MAX_VALUE) {
+            divisor *= 2;
+        }
+
+        FreqTreeNode[] freqTable = new FreqTreeNode[symbols];
+        int i = 0;
+        for (int c = 0; c < counts.length; c++) {
+            if (counts[c] > 0) {
+                freqTable[i++] = new FreqTreeNode((char) c,
+                    (int) Math.max(1, counts[c] / divisor));
+            }
+        }
+        return freqTable;
+    }
+
+    /**
+     * This method adds a set of byte counts to the shared counters.
+     * @param counts    The count of each byte value.
+     */
+    private void addCounts(long[] counts) {
+        for (int b = 0; b < 256; b++) {
+            if (counts[b] != 0) {
+                byteCounts[b].add(counts[b]);
+            }
+        }
+    }
+
+    /**
+     * This method counts the bytes in part of a buffer. Four sets of counters are used in turn
+     * so that runs of the same byte do not wait on each other's increments.
+     * @param data      The buffer.
+     * @param from      Index of the first byte to count.
+     * @param to        Index one past the last byte to count.
+     * @return          The count of each byte value.
+     */
+    private static long[] countBytes(ByteBuffer data, int from, int to) {
+        long[] counts = new long[256];
+        int[] stripes = new int[4 * 256];
+
+        for (int start = from; start < to; start += SEGMENT_SIZE) {
+            int end = Math.min(to, start + SEGMENT_SIZE);
+            int i = start;
+            for (; i + 4 <= end; i += 4) {
+                stripes[data.get(i) & 0xFF]++;
+                stripes[256 + (data.get(i + 1) & 0xFF)]++;
+                stripes[512 + (data.get(i + 2) & 0xFF)]++;
+                stripes[768 + (data.get(i + 3) & 0xFF)]++;
+            }
+            for (; i < end; i++) {
+                stripes[data.get(i) & 0xFF]++;
+            }
+
+            // Move the int stripes into the long totals before they can overflow
+            for (int b = 0; b < 256; b++) {
+                counts[b] += (long) stripes[b] + stripes[256 + b] + stripes[512 + b]
+                    + stripes[768 + b];
+            }
+            Arrays.fill(stripes, 0);
+        }
+        return counts;
+    }
+
+    /**
+     * This class is the fork/join task that counts a range of a buffer, splitting it in half
+     * until it is no larger than one segment.
+     */
+    private static class CountTask extends RecursiveTask<long[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer data;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructor for the task.
+         * @param data      The buffer to be counted.
+         * @param from      Index of the first byte to count.
+         * @param to        Index one past the last byte to count.
+         */
+        CountTask(ByteBuffer data, int from, int to) {
+            this.data = data;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * This method counts the range, or splits it and merges the two halves' counts.
+         * @return      The count of each byte value.
+         */
+        @Override
+        protected long[] compute() {
+            if (to - from <= SEGMENT_SIZE) {
+                return countBytes(data, from, to);
+            }
+
+            int middle = (from + to) >>> 1;
+            CountTask left = new CountTask(data, from, middle);
+            left.fork();
+            long[] counts = new CountTask(data, middle, to).compute();
+            long[] leftCounts = left.join();
+            for (int b = 0; b < 256; b++) {
+                counts[b] += leftCounts[b];
+            }
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,564 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * This class extends the alphabet of single letters with tokens: frequent runs of letters such
+ * as digrams, trigrams and whole words, chosen from the clear text itself. Each token is given a
+ * character of its own from the Unicode private use area, starting at FIRST_TOKEN, so a text cut
+ * into letters and tokens is still a String and is coded like any other; decoded text is turned
+ * back into letters by expand().
+ *
+ * Tokens are chosen the way byte pair encoding chooses them: the clear text is cut into symbols,
+ * the most frequent pairs of neighbouring symbols become new tokens, and this is repeated until
+ * there are enough tokens. Text is cut into symbols through a trie of the tokens, either
+ * greedily, always taking the longest token that matches, or optimally for a given set of
+ * codes, taking whichever cut gives the fewest bits.
+ *
+ * Packed files and archives of tokenized text carry a token header, so that they can be decoded
+ * without the clear text the tokens were learned from:
+ *   char   the number of tokens
+ *   for each token, in the order of their characters:
+ *     byte   the number of letters in the token
+ *     char[] the letters
+ *   int    the number of codes that follow, or 0 if the file has a code length header instead
+ *   for each code:
+ *     char   the symbol
+ *     byte   the code length
+ *     int    the code, right-aligned
+ *
+ * @author Skyler Carlson
+ * @since 2019-04-19
+ */
+public class TokenAlphabet {
+
+    /**
+     * The character of the first token.
+     */
+    static final char FIRST_TOKEN = '\uE000';
+
+    /**
+     * Most tokens the private use area can hold.
+     */
+    static final int MAX_TOKENS = 0xF8FF - FIRST_TOKEN + 1;
+
+    /**
+     * Longest token, in letters.
+     */
+    static final int MAX_TOKEN_LENGTH = 16;
+
+    /**
+     * Number of rounds over which the tokens are chosen; each round adds an equal share.
+     */
+    static final int MERGE_ROUNDS = 8;
+
+    private final String[] tokens;
+
+    // The trie of the tokens' letters: the edge from a node on a letter is
+    // kept in an open-addressed table, keyed by the node and the letter
+    private long[] edgeKeys = new long[64];
+    private int[] edgeChildren = new int[64];
+    private int edgeCount = 0;
+    private int[] nodeSymbol = new int[16];
+    private int nodeCount = 1;
+
+    // Set by train(): the symbol counts of the clear text, cut greedily
+    private FreqTreeNode[] freqTable = null;
+    private long letters = 0;
+    private long symbols = 0;
+
+    // Set by fromHeader(): the codes the header carries, if any
+    private HuffmanDecodeTable decodeTable = null;
+
+    /**
+     * Constructor for an alphabet with the given tokens.
+     * @param tokens    The text of each token, in the order of their characters.
+     */
+    private TokenAlphabet(List<String> tokens) {
+        this.tokens = tokens.toArray(new String[tokens.size()]);
+        nodeSymbol[0] = -1;
+        for (int t = 0; t < this.tokens.length; t++) {
+            addToken(this.tokens[t], (char) (FIRST_TOKEN + t));
+        }
+    }
+
+    /**
+     * This method chooses tokens for the given phrases, and counts how often each letter and
+     * token is used when the phrases are cut greedily.
+     * @param phrases       The clear text phrases.
+     * @param maxTokens     The most tokens to choose.
+     * @return              The alphabet.
+     * @throws IllegalArgumentException If the phrases use characters reserved for tokens.
+     */
+    public static TokenAlphabet train(String[] phrases, int maxTokens) {
+        maxTokens = Math.max(0, Math.min(maxTokens, MAX_TOKENS));
+        boolean[] seen = new boolean[Character.MAX_VALUE + 1];
+        for (String phrase : phrases) {
+            for (int i = 0; i < phrase.length(); i++) {
+                char c = phrase.charAt(i);
+                if (c >= FIRST_TOKEN && c < FIRST_TOKEN + MAX_TOKENS) {
+                    throw new IllegalArgumentException("Clear text uses the private use "
+                        + "character " + Integer.toHexString(c) + ", which is kept for tokens.");
+                }
+                seen[c] = true;
+            }
+        }
+
+        // Turn the most frequent pairs of symbols into tokens, a share per round
+        List<String> tokens = new ArrayList<String>();
+        Set<String> known = new HashSet<String>();
+        TokenAlphabet alphabet = new TokenAlphabet(tokens);
+        int perRound = Math.max(1, (maxTokens + MERGE_ROUNDS - 1) / MERGE_ROUNDS);
+        while (tokens.size() < maxTokens) {
+            Map<Integer, int[]> pairCounts = new HashMap<Integer, int[]>();
+            for (String phrase : phrases) {
+                String cut = alphabet.tokenize(phrase);
+                for (int i = 0; i + 1 < cut.length(); i++) {
+                    Integer pair = (cut.charAt(i) << 16) | cut.charAt(i + 1);
+                    int[] count = pairCounts.get(pair);
+                    if (count == null) {
+                        pairCounts.put(pair, new int[] {1});
+                    } else {
+                        count[0]++;
+                    }
+                }
+            }
+
+            // Rank the pairs by count, keeping only those seen more than once
+            long[] ranked = new long[pairCounts.size()];
+            int pairs = 0;
+            for (Map.Entry<Integer, int[]> entry : pairCounts.entrySet()) {
+                if (entry.getValue()[0] > 1) {
+                    ranked[pairs++] = ((long) entry.getValue()[0] << 32)
+                        | (entry.getKey() & 0xFFFFFFFFL);
+                }
+            }
+            Arrays.sort(ranked, 0, pairs);
+
+            int added = 0;
+            for (int p = pairs - 1; p >= 0 && added < perRound
+                && tokens.size() < maxTokens; p--) {
+                int pair = (int) ranked[p];
+                String text = alphabet.expand(String.valueOf(
+                    new char[] {(char) (pair >>> 16), (char) pair})).toString();
+                if (text.length() <= MAX_TOKEN_LENGTH && known.add(text)) {
+                    tokens.add(text);
+                    added++;
+                }
+            }
+            if (added == 0) {
+                break;
+            }
+            alphabet = new TokenAlphabet(tokens);
+        }
+
+        // Drop the tokens that the greedy cut never uses, which does not
+        // change the cut, and count the symbols it makes
+        long[] counts = alphabet.countSymbols(phrases);
+        List<String> used = new ArrayList<String>();
+        for (int t = 0; t < tokens.size(); t++) {
+            if (counts[FIRST_TOKEN + t] > 0) {
+                used.add(tokens.get(t));
+            }
+        }
+        alphabet = new TokenAlphabet(used);
+        counts = alphabet.countSymbols(phrases);
+
+        // Every letter keeps a code, even if the tokens take all its uses
+        List<FreqTreeNode> entries = new ArrayList<FreqTreeNode>();
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (seen[c]) {
+                entries.add(new FreqTreeNode((char) c, frequency(Math.max(1, counts[c]))));
+            }
+        }
+        for (int t = 0; t < alphabet.tokens.length; t++) {
+            FreqTreeNode token = new FreqTreeNode((char) (FIRST_TOKEN + t),
+                frequency(counts[FIRST_TOKEN + t]));
+            token.setHuffmanSequence(alphabet.tokens[t]);
+            entries.add(token);
+        }
+        for (String phrase : phrases) {
+            alphabet.letters += phrase.length();
+        }
+        for (long count : counts) {
+            alphabet.symbols += count;
+        }
+        alphabet.freqTable = entries.toArray(new FreqTreeNode[entries.size()]);
+        return alphabet;
+    }
+
+    /**
+     * This method writes the token header of the alphabet.
+     * @param codebook  The codes the phrases were encoded with, or null if the file holds them
+     * as a code length header.
+     * @return          The header bytes.
+     */
+    public byte[] toHeader(HuffmanCodebook codebook) {
+        int size = 2 + 4;
+        for (String token : tokens) {
+            size += 1 + 2 * token.length();
+        }
+        int codes = 0;
+        if (codebook != null) {
+            for (FreqTreeNode entry : freqTable) {
+                if (codebook.getLength(entry.getCharacter()) > 0) {
+                    codes++;
+                }
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(size + 7 * codes);
+        header.putChar((char) tokens.length);
+        for (String token : tokens) {
+            header.put((byte) token.length());
+            for (int i = 0; i < token.length(); i++) {
+                header.putChar(token.charAt(i));
+            }
+        }
+        header.putInt(codes);
+        for (int i = 0; codes > 0 && i < freqTable.length; i++) {
+            char symbol = freqTable[i].getCharacter();
+            if (codebook.getLength(symbol) > 0) {
+                header.putChar(symbol);
+                header.put((byte) codebook.getLength(symbol));
+                header.putInt(codebook.getCode(symbol));
+            }
+        }
+        return header.array();
+    }
+
+    /**
+     * This method reads the alphabet of a token header.
+     * @param header    The header bytes, as written by toHeader().
+     * @return          The alphabet, whose getDecodeTable() gives the header's codes if it has
+     * any.
+     * @throws IllegalArgumentException If the header is malformed.
+     */
+    public static TokenAlphabet fromHeader(byte[] header) {
+        try {
+            ByteBuffer data = ByteBuffer.wrap(header);
+            int tokenCount = data.getChar();
+            if (tokenCount > MAX_TOKENS) {
+                throw new IllegalArgumentException("Token header has too many tokens.");
+            }
+            List<String> tokens = new ArrayList<String>(tokenCount);
+            for (int t = 0; t < tokenCount; t++) {
+                int length = data.get() & 0xFF;
+                if (length < 2 || length > MAX_TOKEN_LENGTH) {
+                    throw new IllegalArgumentException("Token header has a token of "
+                        + length + " letters.");
+                }
+                char[] letters = new char[length];
+                for (int i = 0; i < length; i++) {
+                    letters[i] = data.getChar();
+                }
+                tokens.add(new String(letters));
+            }
+            TokenAlphabet alphabet = new TokenAlphabet(tokens);
+
+            int codeCount = data.getInt();
+            if (codeCount < 0 || codeCount > data.remaining() / 7) {
+                throw new IllegalArgumentException("Token header is truncated.");
+            }
+            if (codeCount > 0) {
+                char[] symbols = new char[codeCount];
+                int[] codes = new int[codeCount];
+                int[] lengths = new int[codeCount];
+                for (int i = 0; i < codeCount; i++) {
+                    symbols[i] = data.getChar();
+                    lengths[i] = data.get() & 0xFF;
+                    codes[i] = data.getInt();
+                }
+                checkPrefixFree(codes, lengths);
+                alphabet.decodeTable = new HuffmanDecodeTable(symbols, codes, lengths);
+            }
+            if (data.hasRemaining()) {
+                throw new IllegalArgumentException("Token header is malformed.");
+            }
+            return alphabet;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Token header is truncated.");
+        }
+    }
+
+    /**
+     * Getter method for the codes read from a token header.
+     * @return      The decode table, or null if the header had no codes.
+     */
+    public HuffmanDecodeTable getDecodeTable() {
+        return this.decodeTable;
+    }
+
+    /**
+     * Getter method for the frequency table of the letters and tokens.
+     * @return      The table, as counted by train(); a token's entry holds its text as its
+     * Huffman sequence.
+     */
+    public FreqTreeNode[] getFreqTable() {
+        return this.freqTable;
+    }
+
+    /**
+     * Getter method for the number of tokens.
+     * @return      The number of tokens in the alphabet.
+     */
+    public int getTokenCount() {
+        return this.tokens.length;
+    }
+
+    /**
+     * This method cuts text into letters and tokens, always taking the longest token that
+     * matches.
+     * @param text      The clear text.
+     * @return          The symbols.
+     */
+    public String tokenize(String text) {
+        StringBuilder cut = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length()) {
+            char symbol = text.charAt(i);
+            int length = 1;
+            int node = 0;
+            for (int j = i; j < text.length() && j - i < MAX_TOKEN_LENGTH; j++) {
+                node = child(node, text.charAt(j));
+                if (node < 0) {
+                    break;
+                }
+                if (nodeSymbol[node] >= 0) {
+                    symbol = (char) nodeSymbol[node];
+                    length = j - i + 1;
+                }
+            }
+            cut.append(symbol);
+            i += length;
+        }
+        return cut.toString();
+    }
+
+    /**
+     * This method cuts text into the letters and tokens that the given codes encode in the
+     * fewest bits. The best cut of each suffix of the text is found from the end backwards.
+     * @param text      The clear text.
+     * @param codebook  The codes of the letters and tokens.
+     * @return          The symbols.
+     */
+    public String tokenize(String text, HuffmanCodebook codebook) {
+        int n = text.length();
+        long[] bits = new long[n + 1];
+        char[] choice = new char[n];
+        for (int i = n - 1; i >= 0; i--) {
+            choice[i] = text.charAt(i);
+            bits[i] = codebook.getLength(choice[i]) + bits[i + 1];
+
+            int node = 0;
+            for (int j = i; j < n && j - i < MAX_TOKEN_LENGTH; j++) {
+                node = child(node, text.charAt(j));
+                if (node < 0) {
+                    break;
+                }
+                int symbol = nodeSymbol[node];
+                if (symbol >= 0 && codebook.getLength((char) symbol) > 0) {
+                    long tokenBits = codebook.getLength((char) symbol) + bits[j + 1];
+                    if (tokenBits < bits[i]) {
+                        bits[i] = tokenBits;
+                        choice[i] = (char) symbol;
+                    }
+                }
+            }
+        }
+
+        StringBuilder cut = new StringBuilder(n);
+        for (int i = 0; i < n; i += length(choice[i])) {
+            cut.append(choice[i]);
+        }
+        return cut.toString();
+    }
+
+    /**
+     * This method turns symbols back into letters.
+     * @param symbols   The letters and tokens.
+     * @return          The text, with each token replaced by its letters.
+     */
+    public StringBuilder expand(CharSequence symbols) {
+        StringBuilder text = new StringBuilder(symbols.length() * 2);
+        for (int i = 0; i < symbols.length(); i++) {
+            char c = symbols.charAt(i);
+            if (c >= FIRST_TOKEN && c < FIRST_TOKEN + tokens.length) {
+                text.append(tokens[c - FIRST_TOKEN]);
+            } else {
+                text.append(c);
+            }
+        }
+        return text;
+    }
+
+    /**
+     * This method describes how much the tokens shorten the clear text.
+     * @return      A summary of the number of tokens and symbols.
+     */
+    public String summary() {
+        return String.format("%d tokens: the clear text is %d symbols instead of %d "
+                + "letters (%.2f letters per symbol).%n", tokens.length, symbols, letters,
+            symbols == 0 ? 0 : (double) letters / symbols);
+    }
+
+    /**
+     * This method checks that a set of codes can be decoded: each must fit its length, and no
+     * code may be the prefix of another.
+     * @param codes     The code of each symbol, right-aligned.
+     * @param lengths   The code length of each symbol.
+     * @throws IllegalArgumentException If the codes cannot be decoded.
+     */
+    private static void checkPrefixFree(int[] codes, int[] lengths) {
+
+        // Each code covers a range of the MAX_CODE_LENGTH-bit values; the ranges must not meet
+        int max = HuffmanDecodeTable.MAX_CODE_LENGTH;
+        long[] starts = new long[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            long code = codes[i] & 0xFFFFFFFFL;
+            if (lengths[i] < 1 || lengths[i] > max || code >>> lengths[i] != 0) {
+                throw new IllegalArgumentException("Token header has a malformed code.");
+            }
+            starts[i] = (code << (max - lengths[i])) << 6 | lengths[i];
+        }
+        Arrays.sort(starts);
+        long end = 0;
+        for (long start : starts) {
+            long first = start >>> 6;
+            if (first < end) {
+                throw new IllegalArgumentException("Token header has overlapping codes.");
+            }
+            end = first + (1L << (max - (int) (start & 63)));
+        }
+    }
+
+    /**
+     * This method cuts each phrase greedily and counts the symbols.
+     * @param phrases   The clear text phrases.
+     * @return          The count of each symbol, indexed by its character.
+     */
+    private long[] countSymbols(String[] phrases) {
+        long[] counts = new long[Character.MAX_VALUE + 1];
+        for (String phrase : phrases) {
+            String cut = tokenize(phrase);
+            for (int i = 0; i < cut.length(); i++) {
+                counts[cut.charAt(i)]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * This method finds the number of letters a symbol stands for.
+     * @param symbol    The letter or token.
+     * @return          The length of the token's text, or 1 for a letter.
+     */
+    private int length(char symbol) {
+        if (symbol >= FIRST_TOKEN && symbol < FIRST_TOKEN + tokens.length) {
+            return tokens[symbol - FIRST_TOKEN].length();
+        }
+        return 1;
+    }
+
+    /**
+     * This method adds a token to the trie.
+     * @param text      The token's letters.
+     * @param symbol    The token's character.
+     */
+    private void addToken(String text, char symbol) {
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int next = child(node, text.charAt(i));
+            if (next < 0) {
+                next = addNode();
+                addEdge(node, text.charAt(i), next);
+            }
+            node = next;
+        }
+        nodeSymbol[node] = symbol;
+    }
+
+    /**
+     * This method follows an edge of the trie.
+     * @param node      The node the edge leaves.
+     * @param letter    The letter on the edge.
+     * @return          The node the edge leads to, or -1 if there is no such edge.
+     */
+    private int child(int node, char letter) {
+        long key = (((long) node << 16) | letter) + 1;
+        int mask = edgeKeys.length - 1;
+        for (int slot = hash(key) & mask; edgeKeys[slot] != 0; slot = (slot + 1) & mask) {
+            if (edgeKeys[slot] == key) {
+                return edgeChildren[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This method adds an edge to the trie, growing the edge table when it is half full.
+     * @param node      The node the edge leaves.
+     * @param letter    The letter on the edge.
+     * @param child     The node the edge leads to.
+     */
+    private void addEdge(int node, char letter, int child) {
+        if (2 * (edgeCount + 1) > edgeKeys.length) {
+            long[] oldKeys = edgeKeys;
+            int[] oldChildren = edgeChildren;
+            edgeKeys = new long[oldKeys.length * 2];
+            edgeChildren = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    putEdge(oldKeys[i], oldChildren[i]);
+                }
+            }
+        }
+        putEdge((((long) node << 16) | letter) + 1, child);
+        edgeCount++;
+    }
+
+    /**
+     * This method stores an edge in the first free slot for its key.
+     * @param key       The node and letter, plus one so that no key is 0.
+     * @param child     The node the edge leads to.
+     */
+    private void putEdge(long key, int child) {
+        int mask = edgeKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (edgeKeys[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        edgeKeys[slot] = key;
+        edgeChildren[slot] = child;
+    }
+
+    /**
+     * This method adds a node to the trie.
+     * @return          The index of the new node, which has no token.
+     */
+    private int addNode() {
+        if (nodeCount == nodeSymbol.length) {
+            nodeSymbol = Arrays.copyOf(nodeSymbol, nodeCount * 2);
+        }
+        nodeSymbol[nodeCount] = -1;
+        return nodeCount++;
+    }
+
+    /**
+     * This method spreads the bits of an edge key over the table.
+     * @param key       The key.
+     * @return          The hash.
+     */
+    private static int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40);
+    }
+
+    /**
+     * This method fits a count into a frequency table entry.
+     * @param count     The count.
+     * @return          The count, or the largest frequency if it is larger.
+     */
+    private static int frequency(long count) {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+}